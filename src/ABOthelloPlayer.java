@@ -1,5 +1,6 @@
 import java.util.Date;
 import java.util.AbstractSet;
+import java.util.Iterator;
 
 /** 
  * @author Catalina Ionescu, Aditi Joshi
@@ -17,13 +18,19 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
     private static int exploredSuccessors = 0;
     private static int totalParents = 0;
 
+    // Min and max nodes of the same state have different values
+    private static final long MIN_NODE_KEY = 0x5bd1e9955bd1e995L;
+    private TranspositionTable table;
+    private MoveOrdering ordering = new MoveOrdering();
+    private EndgameSolver endgame = new EndgameSolver();
+
     /**
      * Constructor 1
      * 
      * @param name the name of the player
      */
     public ABOthelloPlayer (String name) {
-        super(name);
+        this(name, 4);
     }
 
     /**
@@ -33,8 +40,20 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
      * @param depthLimit maximum depth that can be explored
      */
     public ABOthelloPlayer (String name, int depthLimit) {
+        this(name, depthLimit, TranspositionTable.create());
+    }
+
+    /**
+     * Constructor 3
+     * 
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     * @param table the transposition table to use, or null for none
+     */
+    public ABOthelloPlayer (String name, int depthLimit, TranspositionTable table) {
         super(name);
         this.depthLimit = depthLimit;
+        this.table = table;
     }
 
     /**
@@ -46,15 +65,35 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
      */
     @Override
     public Square getMove(GameState currentState, Date deadline) {
+        Square book = getBookMove(currentState);
+        if (book != null) return book;
+
+        // Close to the end of the game, solve it (or prove a win) instead,
+        // giving the solver half of the time; if it does not finish in time,
+        // the alpha-beta search below chooses the move. Without a deadline
+        // the solver is never allowed deeper than the depth limit.
+        int empties = currentState.getScore(GameState.Player.EMPTY);
+        if (endgame.willSolve(empties)
+                && (deadline != null || depthLimit == -1 || empties <= depthLimit)) {
+            Square move = endgame.solve(currentState, deadline == null ? null
+                    : new TimeManager(getMillisUntilDeadline() / 2));
+            if (move != null) return move;
+        }
+
+        ordering.age();
         AbstractSet<GameState> successors = currentState.getSuccessors(true);
 
         GameState optimalState = null;
         GameState.Player currentPlayer = currentState.getCurrentPlayer();
 
         int evaluation = Integer.MAX_VALUE;
+        long distinct = currentState.distinctMoveMask();
 
         // Minimax with alpha beta pruning
         for (GameState state : successors) {
+            // Moves to symmetric positions have the same value
+            if ((distinct & (1L << state.getPreviousMove().getIndex())) == 0) continue;
+
             int curEval = minValue(state, Integer.MIN_VALUE, Integer.MAX_VALUE, 1);
 
             if (curEval < evaluation) {
@@ -100,23 +139,53 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
             return staticEvaluator(state);
         }
 
+        // Look for a cutoff or a best move from an earlier search
+        long key = state.getZobristKey();
+        int draft = remainingDepth(depth);
+        int ttMove = TranspositionTable.NO_MOVE;
+        if (table != null) {
+            long entry = table.probe(key);
+            if (entry != 0) {
+                ttMove = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) >= draft) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= b)
+                            || (bound == TranspositionTable.UPPER && score <= a))
+                        return score;
+                }
+            }
+        }
+
         int v = Integer.MIN_VALUE;
-        AbstractSet<GameState> successors = state.getSuccessors(true);
-        totalSuccessors += successors.size();
+        int alpha = a;
+        int bestMove = TranspositionTable.NO_MOVE;
+        // Successors are generated lazily so that a cutoff skips the rest
+        Iterator<GameState> successors = state.successorIterator(
+                ordering.comparator(ttMove, depth, state.getCurrentPlayer()), false);
+        totalSuccessors += Long.bitCount(state.legalMoveMask());
         totalParents++;
         depth++;
 
-        for (GameState s : successors) {
-            if ( s == null) continue;
-
+        while (successors.hasNext()) {
+            GameState s = successors.next();
             exploredSuccessors++;
-            v = Math.max(v, (minValue(s,a, b, depth)));
+            int cur = minValue(s, a, b, depth);
+            if (cur > v || bestMove == TranspositionTable.NO_MOVE) {
+                v = cur;
+                bestMove = s.getPreviousMove().getIndex();
+            }
 
-            if (v >= b) return v;
+            if (v >= b) {
+                ordering.recordCutoff(bestMove, depth - 1, state.getCurrentPlayer(), draft);
+                break;
+            }
 
             a = Math.max(v, a);
         }
 
+        store(key, draft, alpha, b, v, bestMove);
         return v;
 
     }
@@ -136,22 +205,76 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
             return staticEvaluator(state);
         }
 
+        long key = state.getZobristKey() ^ MIN_NODE_KEY;
+        int draft = remainingDepth(depth);
+        int ttMove = TranspositionTable.NO_MOVE;
+        if (table != null) {
+            long entry = table.probe(key);
+            if (entry != 0) {
+                ttMove = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) >= draft) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= b)
+                            || (bound == TranspositionTable.UPPER && score <= a))
+                        return score;
+                }
+            }
+        }
+
         int v = Integer.MAX_VALUE;
-        AbstractSet<GameState> successors = state.getSuccessors(true);
-        totalSuccessors+= successors.size();
+        int beta = b;
+        int bestMove = TranspositionTable.NO_MOVE;
+        Iterator<GameState> successors = state.successorIterator(
+                ordering.comparator(ttMove, depth, state.getCurrentPlayer()), false);
+        totalSuccessors += Long.bitCount(state.legalMoveMask());
         totalParents++;
         depth++;
-        for (GameState s : successors) {
-            if (s == null) continue;
+        while (successors.hasNext()) {
+            GameState s = successors.next();
             exploredSuccessors++;
-            v = Math.min(v, (maxValue(s, a, b, depth)));
-            if (v <= a) return v;
+            int cur = maxValue(s, a, b, depth);
+            if (cur < v || bestMove == TranspositionTable.NO_MOVE) {
+                v = cur;
+                bestMove = s.getPreviousMove().getIndex();
+            }
+            if (v <= a) {
+                ordering.recordCutoff(bestMove, depth - 1, state.getCurrentPlayer(), draft);
+                break;
+            }
             b = Math.min(v, b);
         }
+        store(key, draft, a, beta, v, bestMove);
         return v;
 
     }
-    
+
+    /**
+     * The depth that remains to be searched below a node at the given depth.
+     */
+    private int remainingDepth(int depth) {
+        return (depthLimit == -1 ? 255 : depthLimit - depth);
+    }
+
+    /**
+     * Records the result of searching a node in the transposition table.
+     * 
+     * @param key the key of the node
+     * @param draft the depth that was searched below the node
+     * @param a the lower end of the window the node was searched with
+     * @param b the upper end of the window the node was searched with
+     * @param v the value found
+     * @param bestMove the index of the best move found
+     */
+    private void store(long key, int draft, int a, int b, int v, int bestMove) {
+        if (table == null) return;
+        int bound = (v <= a ? TranspositionTable.UPPER
+                : (v >= b ? TranspositionTable.LOWER : TranspositionTable.EXACT));
+        table.store(key, draft, bound, v, bestMove);
+    }
+
+
     /**
      * Compute the value of the simple static evaluation function
      * 
@@ -161,6 +284,15 @@ public class ABOthelloPlayer extends OthelloPlayer implements MiniMax{
     @Override
     public int staticEvaluator(GameState state) {
         staticEvaluations++;
+        return evaluate(state);
+    }
+
+    /**
+     * The value of the simple static evaluation function, used when no
+     * {@link Evaluator} is set.
+     */
+    @Override
+    protected int heuristic(GameState state) {
         return state.getScore(state.getCurrentPlayer());
     }
 
@@ -1,7 +1,5 @@
 import java.util.Date;
-import java.util.AbstractSet;
-import java.util.HashMap;
-import java.util.Date;
+import java.util.Iterator;
 
 /** 
  * @author Catalina Ionescu, Aditi Joshi
@@ -14,13 +12,22 @@ import java.util.Date;
 public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
 
     private int depthLimit = -1;
+    // The depth limit of the current iteration
+    private int iterationLimit;
+    private TimeManager time;
+    // Without a deadline or a depth limit, search this deep
+    private static final int DEFAULT_DEPTH = 8;
     private static int staticEvaluations = 0;
     private static int totalSuccessors = 0;
     private static int exploredSuccessors = 0;
     private static int totalParents = 0;
     
+    // Min and max nodes of the same state have different values
+    private static final long MIN_NODE_KEY = 0x5bd1e9955bd1e995L;
     // To keep track of the visited nodes.
-    private HashMap<GameState, Integer> visited = new HashMap<GameState, Integer>();
+    private TranspositionTable table;
+    private MoveOrdering ordering = new MoveOrdering();
+    private EndgameSolver endgame = new EndgameSolver();
 
     /**
      * Constructor 1
@@ -28,7 +35,7 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
      * @param name the name of the player
      */
     public ACOthelloPlayer (String name) {
-        super(name);
+        this(name, -1);
     }
 
     /**
@@ -38,12 +45,28 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
      * @param depthLimit maximum depth that can be explored
      */
     public ACOthelloPlayer (String name, int depthLimit) {
+        this(name, depthLimit, TranspositionTable.create());
+    }
+
+    /**
+     * Constructor 3
+     * 
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     * @param table the transposition table to use, or null for none
+     */
+    public ACOthelloPlayer (String name, int depthLimit, TranspositionTable table) {
         super(name);
         this.depthLimit = depthLimit;
+        this.table = table;
     }
 
     /**
-     * This method uses iterative deepening to find the best move for MaxPlayer
+     * This method uses iterative deepening to find the best move for MaxPlayer.
+     * Each iteration searches one ply deeper than the last, for as long as the
+     * time manager expects the next iteration to finish before the deadline.
+     * If the time runs out in the middle of an iteration, that iteration is
+     * abandoned and the best move of the last completed one is returned.
      * 
      * @param currentState current state of the game
      * @param deadline maximum amount of time the operation can take
@@ -51,127 +74,107 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
      */
     @Override
     public Square getMove(GameState currentState, Date deadline) {
-        AbstractSet<GameState> successors = currentState.getSuccessors(true);
+        time = new TimeManager(deadline == null ? TimeManager.UNLIMITED : getMillisUntilDeadline());
+
+        Square book = getBookMove(currentState);
+        if (book != null) return book;
+
+        // Close to the end of the game, solve it (or prove a win) instead,
+        // giving the solver half of the time. Without a deadline the solver
+        // is never allowed deeper than the depth limit.
+        int empties = currentState.getScore(GameState.Player.EMPTY);
+        if (endgame.willSolve(empties)
+                && (!time.isUnlimited() || depthLimit == -1 || empties <= depthLimit)) {
+            Square move = endgame.solve(currentState, time.isUnlimited() ? null
+                    : new TimeManager(getMillisUntilDeadline() / 2));
+            if (move != null) return move;
+        }
 
-        GameState optimalState = null;
+        ordering.age();
 
-        int evaluation = Integer.MAX_VALUE;
-        int depth = 0;
-        while (depthLimit == -1 || depth < depthLimit) {
+        // Searching deeper than the number of empty squares finds nothing new
+        int maxDepth = empties;
+        if (depthLimit != -1) maxDepth = Math.min(maxDepth, depthLimit);
+        else if (time.isUnlimited()) maxDepth = Math.min(maxDepth, DEFAULT_DEPTH);
 
-            Long startTime = System.currentTimeMillis();
+        Square optimalMove = null;
+        int depth = 1;
+        while (depth <= maxDepth && time.canStartIteration()) {
+            int nodes = exploredSuccessors;
+            time.startIteration();
 
-            GameState cur = iterativeDeepening(currentState, depth, startTime, deadline);
-            int tempEvaluation = staticEvaluator(cur);
-
-            if (tempEvaluation < evaluation) {
-                optimalState = cur;
-                evaluation = tempEvaluation;
-            }
-
-            if (System.currentTimeMillis() - startTime >= deadline.getTime()) break;
+            GameState cur = iterativeDeepening(currentState, depth, optimalMove);
+            if (time.isAborted() || cur == null) break;
 
+            optimalMove = cur.getPreviousMove();
+            time.endIteration(exploredSuccessors - nodes);
             depth++;
         }
 
-        if (optimalState == null) return null;
-
-        return optimalState.getPreviousMove();
+        if (optimalMove == null) {
+            // Not even the first iteration finished; any legal move will do
+            long moves = currentState.legalMoveMask();
+            if (moves == 0) return null;
+            optimalMove = Square.of(Long.numberOfTrailingZeros(moves));
+        }
+        log("Searched " + (depth - 1) + " plies in " + time.getElapsedMillis() + " ms");
+        return optimalMove;
 
     }
 
     /**
-     * Check if the state is terminal, or if the depth limit has been exceeded
+     * Check if the state is terminal, or if the depth limit of the current
+     * iteration has been reached
      * 
      * @param state the state to be evaluated
      * @param depth current depth of the state
      * @return true if it terminal state, else return false;
      */
-    private boolean isTerminalState(GameState state, int depth, long startTime,  Date deadline) {
+    private boolean isTerminalState(GameState state, int depth) {
 
-        if (depthLimit != -1 && depth >= depthLimit) return true;
+        if (depth >= iterationLimit) return true;
         if (state.getScore(state.getCurrentPlayer()) + state.getScore(state.getOpponent(state.getCurrentPlayer())) >= 64) return true;
         if(state.getStatus() != GameState.GameStatus.PLAYING) return true;
-        if (deadline != null &&  System.currentTimeMillis() - startTime >= deadline.getTime()) return true;
 
         return false;
 
     }
 
     /**
-     * 
+     * Searches every successor of the current state to the given depth.
      * 
      * @param currentState the current state of the game
-     * @param depth current depth of the state
-     * @param startTime 
-     * @param deadline maximum amount of time the operation can take
-     * @return 
+     * @param depth the depth of this iteration
+     * @param previousMove the best move of the previous iteration, which is
+     *                     searched first, or null
+     * @return the best successor, or null if the time ran out
      */
-    public GameState iterativeDeepening(GameState currentState, int depth, long startTime, Date deadline) {
-        AbstractSet<GameState> successors = currentState.getSuccessors(true);
+    public GameState iterativeDeepening(GameState currentState, int depth, Square previousMove) {
+        iterationLimit = depth;
+        Iterator<GameState> successors = currentState.successorIterator(ordering.comparator(
+                previousMove == null ? TranspositionTable.NO_MOVE : previousMove.getIndex(), 0,
+                currentState.getCurrentPlayer()), true);
 
         GameState optimalState = null;
 
         int evaluation = Integer.MAX_VALUE;
-
-        for (GameState state : successors) {
-//            int curEval = NegaScout(state, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, startTime, deadline);
-            int curEval = minValue(state, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, startTime, deadline);
-            if (curEval < evaluation) {
+        long distinct = currentState.distinctMoveMask();
+
+        while (successors.hasNext()) {
+            GameState state = successors.next();
+            // Moves to symmetric positions have the same value
+            if ((distinct & (1L << state.getPreviousMove().getIndex())) == 0) continue;
+            int curEval = minValue(state, Integer.MIN_VALUE, Integer.MAX_VALUE, 1);
+            if (time.isAborted()) return null;
+            if (curEval < evaluation || optimalState == null) {
                 evaluation = curEval;
                 optimalState = state;
             }
-
-            if (System.currentTimeMillis() - startTime >= deadline.getTime()) break;
         }
 
-        if (optimalState == null) return null;
-
         return optimalState;
     }
 
-    /**
-     * 
-     * @param state the state to be evaluated
-     * @param depth current depth of the state
-     * @param alpha value of the best alternative for max
-     * @param beta value of the best alternative for min
-     * @param startTime the starting time of the algorithm
-     * @param deadline maximum amount of time the operation can take
-     * @return
-     */
-    public int NegaScout (GameState state, int depth, int alpha, int beta, long startTime, Date deadline) {
-
-        if ( depth == 0 || isTerminalState(state, depth, startTime, deadline)) {
-            return staticEvaluator(state);
-        }
-        int score = Integer.MIN_VALUE;
-        int n = beta;
-        AbstractSet<GameState>successors = state.getSuccessors(true);
-        totalSuccessors += successors.size();
-        totalParents++;
-        for (GameState succ : successors) {
-            if (succ == null) continue;
-            exploredSuccessors++;
-            int cur = -NegaScout(succ, depth - 1, -n, -alpha, startTime, deadline);
-            if (cur > score) {
-                if (n == beta || depth <= 2) {
-                    score = cur;
-                } else {
-                    score = -NegaScout(succ, depth - 1, -beta, -cur, startTime, deadline);
-                }
-            }
-
-            if (score > alpha) {
-                alpha = score;
-            }
-            if (alpha >= beta) return alpha;
-            n = alpha + 1;
-        }
-
-        return score;
-    }
-
     /**
      * It maximizes the value of the evaluation function.
      * 
@@ -179,31 +182,58 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
      * @param a value of the best alternative for max
      * @param b value of the best alternative for min
      * @param depth current depth of the state
-     * @param startTime the starting time of the algorithm
-     * @param deadline maximum amount of time the operation can take
      * @return the maximum value of the evaluation function
      */
-    public int maxValue(GameState state, int a, int b, int depth, long startTime, Date deadline ) {
-        if (isTerminalState(state, depth, startTime, deadline)) {
+    public int maxValue(GameState state, int a, int b, int depth) {
+        if (isTerminalState(state, depth) || time.isTimeUp()) {
             return staticEvaluator(state);
         }
 
+        // Look for a cutoff or a best move from an earlier search
+        long key = state.getZobristKey();
+        int draft = remainingDepth(depth);
+        long entry = (table == null ? 0 : table.probe(key));
+        if (entry != 0 && TranspositionTable.depth(entry) >= draft) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= b)
+                    || (bound == TranspositionTable.UPPER && score <= a))
+                return score;
+        }
+
         int v = Integer.MIN_VALUE;
-        AbstractSet<GameState> successors = state.getSuccessors(true);
-        totalSuccessors += successors.size();
+        int alpha = a;
+        int bestMove = TranspositionTable.NO_MOVE;
+        boolean timedOut = false;
+        Iterator<GameState> successors = state.successorIterator(ordering.comparator(
+                entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry), depth,
+                state.getCurrentPlayer()), false);
+        totalSuccessors += Long.bitCount(state.legalMoveMask());
         totalParents++;
         depth++;
 
-        for (GameState s : successors) {
-            if ( s == null) continue;
-            v = Math.max(v, (minValue(s,a, b, depth, startTime, deadline)));
-            if (System.currentTimeMillis() - startTime >= deadline.getTime()) break;
+        while (successors.hasNext()) {
+            GameState s = successors.next();
+            int cur = minValue(s,a, b, depth);
+            if (cur > v || bestMove == TranspositionTable.NO_MOVE) {
+                v = cur;
+                bestMove = s.getPreviousMove().getIndex();
+            }
+            if (time.isAborted()) {
+                timedOut = true;
+                break;
+            }
             exploredSuccessors++;
-            if (v >= b) return v;
+            if (v >= b) {
+                ordering.recordCutoff(bestMove, depth - 1, state.getCurrentPlayer(), draft);
+                break;
+            }
 
             a = Math.max(v, a);
         }
 
+        if (!timedOut) store(key, draft, alpha, b, v, bestMove);
         return v;
 
     }
@@ -215,33 +245,84 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
      * @param a value of the best alternative for max
      * @param b value of the best alternative for min
      * @param depth current depth of the state
-     * @param startTime the starting time of the algorithm
-     * @param deadline maximum amount of time the operation can take
      * @return the minimum value of the evaluation function
      */
-    public int minValue(GameState state, int a, int b, int depth, long startTime, Date deadline) {
-        if (isTerminalState(state, depth, startTime, deadline)) {
+    public int minValue(GameState state, int a, int b, int depth) {
+        if (isTerminalState(state, depth) || time.isTimeUp()) {
             return staticEvaluator(state);
         }
 
-        int v = Integer.MAX_VALUE;
-        AbstractSet<GameState> successors = state.getSuccessors(true);
+        long key = state.getZobristKey() ^ MIN_NODE_KEY;
+        int draft = remainingDepth(depth);
+        long entry = (table == null ? 0 : table.probe(key));
+        if (entry != 0 && TranspositionTable.depth(entry) >= draft) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= b)
+                    || (bound == TranspositionTable.UPPER && score <= a))
+                return score;
+        }
 
-        totalSuccessors+= successors.size();
+        int v = Integer.MAX_VALUE;
+        int beta = b;
+        int bestMove = TranspositionTable.NO_MOVE;
+        boolean timedOut = false;
+        Iterator<GameState> successors = state.successorIterator(ordering.comparator(
+                entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry), depth,
+                state.getCurrentPlayer()), false);
+
+        totalSuccessors += Long.bitCount(state.legalMoveMask());
         totalParents++;
         depth++;
-        for (GameState s : successors) {
-            if (s == null) continue;
-            v = Math.min(v, (maxValue(s, a, b, depth, startTime, deadline)));
-            if (System.currentTimeMillis() - startTime >= deadline.getTime()) break;
+        while (successors.hasNext()) {
+            GameState s = successors.next();
+            int cur = maxValue(s, a, b, depth);
+            if (cur < v || bestMove == TranspositionTable.NO_MOVE) {
+                v = cur;
+                bestMove = s.getPreviousMove().getIndex();
+            }
+            if (time.isAborted()) {
+                timedOut = true;
+                break;
+            }
             exploredSuccessors++;
-            if (v <= a) return v;
+            if (v <= a) {
+                ordering.recordCutoff(bestMove, depth - 1, state.getCurrentPlayer(), draft);
+                break;
+            }
             b = Math.min(v, b);
         }
+        if (!timedOut) store(key, draft, a, beta, v, bestMove);
         return v;
 
     }
 
+    /**
+     * The depth that remains to be searched below a node at the given depth.
+     */
+    private int remainingDepth(int depth) {
+        return iterationLimit - depth;
+    }
+
+    /**
+     * Records the result of searching a node in the transposition table.
+     * 
+     * @param key the key of the node
+     * @param draft the depth that was searched below the node
+     * @param a the lower end of the window the node was searched with
+     * @param b the upper end of the window the node was searched with
+     * @param v the value found
+     * @param bestMove the index of the best move found
+     */
+    private void store(long key, int draft, int a, int b, int v, int bestMove) {
+        if (table == null) return;
+        int bound = (v <= a ? TranspositionTable.UPPER
+                : (v >= b ? TranspositionTable.LOWER : TranspositionTable.EXACT));
+        table.store(key, draft, bound, v, bestMove);
+    }
+
+
     /**
      * Compute the value of the simple static evaluation function
      * 
@@ -252,16 +333,17 @@ public class ACOthelloPlayer extends OthelloPlayer implements MiniMax{
     public int staticEvaluator(GameState state) {
         if (state == null) return 0;
         
-        // keeping track of the visited nodes
-        if (visited.containsKey(state)) {
-            return visited.get(state); 
-        }
-        int staticEvaluation = state.getValidMoves().size();
         staticEvaluations++;
-        visited.put(state, staticEvaluation);
-        
-        return staticEvaluation;
+        return evaluate(state);
+    }
 
+    /**
+     * The value of the simple static evaluation function, used when no
+     * {@link Evaluator} is set.
+     */
+    @Override
+    protected int heuristic(GameState state) {
+        return Long.bitCount(state.legalMoveMask());
     }
 
     /**
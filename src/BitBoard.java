@@ -0,0 +1,228 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * Static utilities for operating on 64-bit board masks. Bit
+ * <code>8 * row + col</code> of a mask corresponds to the square in the given
+ * row and column, so shifting a mask left by one moves every disc one column to
+ * the right and shifting it left by eight moves every disc one row down.
+ *
+ * @see GameState#getDiscs(GameState.Player)
+ */
+final class BitBoard {
+    /**
+     * Every square except those in columns <code>a</code> and <code>h</code>.
+     * Masking the propagating discs with this prevents fills from wrapping
+     * around the edge of the board.
+     */
+    static final long INNER_COLUMNS = 0x7e7e7e7e7e7e7e7eL;
+
+    private BitBoard() {
+    }
+
+    /**
+     * Returns the mask of all legal moves for the player owning
+     * <code>own</code> against the player owning <code>opp</code>, computed
+     * for all squares at once with a parallel-prefix (Kogge-Stone) fill in
+     * each of the eight directions.
+     */
+    static long legalMoves(long own, long opp) {
+        long inner = opp & INNER_COLUMNS;
+        long moves = (fillUp(own, inner, 1) << 1) | (fillDown(own, inner, 1) >>> 1)
+                | (fillUp(own, opp, 8) << 8) | (fillDown(own, opp, 8) >>> 8)
+                | (fillUp(own, inner, 7) << 7) | (fillDown(own, inner, 7) >>> 7)
+                | (fillUp(own, inner, 9) << 9) | (fillDown(own, inner, 9) >>> 9);
+        return moves & ~(own | opp);
+    }
+
+    /**
+     * Returns the runs of <code>pro</code> that start next to a disc in
+     * <code>gen</code> and extend towards higher bit indices in steps of
+     * <code>shift</code>.
+     */
+    private static long fillUp(long gen, long pro, int shift) {
+        long g = pro & (gen << shift);
+        g |= pro & (g << shift);
+        pro &= pro << shift;
+        g |= pro & (g << (shift << 1));
+        pro &= pro << (shift << 1);
+        g |= pro & (g << (shift << 2));
+        return g;
+    }
+
+    /**
+     * The mirror image of {@link #fillUp(long, long, int)}, extending towards
+     * lower bit indices.
+     */
+    private static long fillDown(long gen, long pro, int shift) {
+        long g = pro & (gen >>> shift);
+        g |= pro & (g >>> shift);
+        pro &= pro >>> shift;
+        g |= pro & (g >>> (shift << 1));
+        pro &= pro >>> (shift << 1);
+        g |= pro & (g >>> (shift << 2));
+        return g;
+    }
+
+    /**
+     * <code>RAYS_UP[d][i]</code> is the mask of squares strictly beyond square
+     * <code>i</code> in direction <code>d</code>, for the four directions in
+     * which bit indices increase (right, down-left, down, down-right).
+     * <code>RAYS_DOWN</code> holds the four opposite directions.
+     */
+    private static final long RAYS_UP[][] = new long[4][64];
+    private static final long RAYS_DOWN[][] = new long[4][64];
+
+    static {
+        int dRow[] = { 0, 1, 1, 1 };
+        int dCol[] = { 1, -1, 0, 1 };
+        for (int d = 0; d < 4; d++) {
+            for (int i = 0; i < 64; i++) {
+                for (int r = i / 8 + dRow[d], c = i % 8 + dCol[d]; r >= 0 && r < 8 && c >= 0
+                        && c < 8; r += dRow[d], c += dCol[d])
+                    RAYS_UP[d][i] |= 1L << (8 * r + c);
+                for (int r = i / 8 - dRow[d], c = i % 8 - dCol[d]; r >= 0 && r < 8 && c >= 0
+                        && c < 8; r -= dRow[d], c -= dCol[d])
+                    RAYS_DOWN[d][i] |= 1L << (8 * r + c);
+            }
+        }
+    }
+
+    /**
+     * Returns the mask of discs in <code>opp</code> that would be flipped by
+     * the player owning <code>own</code> moving to square <code>index</code>,
+     * or zero if the move flips nothing (and is therefore illegal). All eight
+     * directions are resolved in a single pass using precomputed ray masks: the
+     * nearest square along each ray that is not an opponent disc brackets a
+     * run of flips iff it is owned by the mover.
+     */
+    static long flips(int index, long own, long opp) {
+        long flipped = 0;
+        long notOpp = ~opp;
+        for (int d = 0; d < 4; d++) {
+            long ray = RAYS_UP[d][index];
+            long blockers = ray & notOpp;
+            long first = blockers & -blockers;
+            if ((first & own) != 0)
+                flipped |= ray & (first - 1);
+            ray = RAYS_DOWN[d][index];
+            blockers = ray & notOpp;
+            first = Long.highestOneBit(blockers);
+            if ((first & own) != 0)
+                flipped |= ray & ~((first << 1) - 1);
+        }
+        return flipped;
+    }
+
+    /**
+     * The number of symmetries of the board (the dihedral group of the
+     * square). Symmetry <code>s</code> transposes the board if bit 2 of
+     * <code>s</code> is set, then mirrors it left to right if bit 0 is set and
+     * flips it top to bottom if bit 1 is set; symmetry zero is the identity.
+     */
+    static final int SYMMETRIES = 8;
+
+    /**
+     * Returns <code>mask</code> with symmetry <code>symmetry</code> applied.
+     */
+    static long transform(long mask, int symmetry) {
+        if ((symmetry & 4) != 0)
+            mask = flipDiagonal(mask);
+        if ((symmetry & 1) != 0)
+            mask = mirrorHorizontal(mask);
+        if ((symmetry & 2) != 0)
+            mask = flipVertical(mask);
+        return mask;
+    }
+
+    /**
+     * Undoes {@link #transform(long, int)}.
+     */
+    static long inverseTransform(long mask, int symmetry) {
+        if ((symmetry & 2) != 0)
+            mask = flipVertical(mask);
+        if ((symmetry & 1) != 0)
+            mask = mirrorHorizontal(mask);
+        if ((symmetry & 4) != 0)
+            mask = flipDiagonal(mask);
+        return mask;
+    }
+
+    /**
+     * Swaps the rows of <code>mask</code> top to bottom.
+     */
+    static long flipVertical(long mask) {
+        return Long.reverseBytes(mask);
+    }
+
+    /**
+     * Swaps the columns of <code>mask</code> left to right by reversing the
+     * bits of every row, swapping neighbouring bits, pairs and nibbles.
+     */
+    static long mirrorHorizontal(long mask) {
+        mask = ((mask >>> 1) & 0x5555555555555555L) | ((mask & 0x5555555555555555L) << 1);
+        mask = ((mask >>> 2) & 0x3333333333333333L) | ((mask & 0x3333333333333333L) << 2);
+        mask = ((mask >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((mask & 0x0f0f0f0f0f0f0f0fL) << 4);
+        return mask;
+    }
+
+    /**
+     * Transposes <code>mask</code> about the a1-h8 diagonal, so that row and
+     * column are exchanged, by swapping 4x4, 2x2 and 1x1 blocks in turn.
+     */
+    static long flipDiagonal(long mask) {
+        long t = 0x0f0f0f0f00000000L & (mask ^ (mask << 28));
+        mask ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (mask ^ (mask << 14));
+        mask ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (mask ^ (mask << 7));
+        mask ^= t ^ (t >>> 7);
+        return mask;
+    }
+
+    /**
+     * Returns the symmetry that maps the position (<code>own</code>,
+     * <code>opp</code>) to its canonical form: of the (up to eight) distinct
+     * images of the position, the one whose <code>own</code> mask, and then
+     * <code>opp</code> mask, is smallest as an unsigned number. All
+     * symmetric positions share the same canonical form.
+     */
+    static int canonicalSymmetry(long own, long opp) {
+        int best = 0;
+        long bestOwn = own;
+        long bestOpp = opp;
+        for (int s = 1; s < SYMMETRIES; s++) {
+            long o = transform(own, s);
+            int c = Long.compareUnsigned(o, bestOwn);
+            if (c > 0)
+                continue;
+            long p = transform(opp, s);
+            if (c < 0 || Long.compareUnsigned(p, bestOpp) < 0) {
+                best = s;
+                bestOwn = o;
+                bestOpp = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns <code>moves</code> without the moves that lead to the same
+     * position, up to symmetry, as a move to a lower square. Only positions
+     * that some symmetry maps onto themselves (such as the initial position)
+     * have such moves; for all others <code>moves</code> is returned
+     * unchanged.
+     */
+    static long distinctMoves(long own, long opp, long moves) {
+        long distinct = moves;
+        for (int s = 1; s < SYMMETRIES; s++) {
+            if (transform(own, s) != own || transform(opp, s) != opp)
+                continue;
+            for (long m = moves; m != 0; m &= m - 1) {
+                long square = m & -m;
+                if (Long.compareUnsigned(transform(square, s), square) < 0)
+                    distinct &= ~square;
+            }
+        }
+        return distinct;
+    }
+}
@@ -62,7 +62,7 @@ public class ConsoleUserInterface implements UserInterface {
                 BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
                 try {
                     String moveString = in.readLine();
-                    move = new Square(moveString);
+                    move = Square.of(moveString);
                 }
                 catch (IOException ioe) {
                     ioe.printStackTrace();
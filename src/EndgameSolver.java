@@ -0,0 +1,437 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * An exact endgame solver. It searches to the end of the game and returns the
+ * final disc differential (the discs of the player to move minus those of the
+ * opponent, not counting squares left empty) under perfect play.
+ * <p>
+ * The solver works directly on disc masks (see {@link BitBoard}) and
+ * allocates nothing while searching. Moves are ordered in two ways:
+ * </p>
+ * <ul>
+ * <li>fastest first: while many squares are empty, moves that leave the
+ * opponent the fewest replies are tried first, which finds cutoffs early and
+ * keeps the tree narrow;</li>
+ * <li>parity: closer to the end, moves into quadrants with an odd number of
+ * empty squares are tried first, since the player who moves last into a
+ * region usually gains from it.</li>
+ * </ul>
+ * <p>
+ * The last four empty squares are solved by special-cased code that tries
+ * the empty squares directly instead of generating move masks, with the last
+ * square counted without making the move at all.
+ * </p>
+ * <p>
+ * Besides exact solves, the solver has a win/loss/draw (WLD) mode that only
+ * determines the sign of the result by searching with the window (-1, 1).
+ * This prunes far more, so it can start several empty squares earlier. Once
+ * a WLD solve has proven a win, {@link #chooseMove(long, long, TimeManager)}
+ * keeps playing proven winning moves for the rest of the game.
+ * </p>
+ * <p>
+ * A solver is used by one thread at a time.
+ * </p>
+ */
+public class EndgameSolver {
+    /**
+     * Returned by {@link #getBestMove()} when there is no move, or the solve
+     * was aborted.
+     */
+    public static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /**
+     * With more empty squares than this, moves are ordered fastest first;
+     * otherwise by parity alone.
+     */
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+
+    /**
+     * With this many empty squares or fewer, the special-cased search is used.
+     */
+    private static final int SHALLOW_EMPTIES = 4;
+
+    /**
+     * Larger than any disc differential.
+     */
+    private static final int INFINITY = 65;
+
+    private static final long QUADRANTS[] = {
+        0x000000000f0f0f0fL, 0x00000000f0f0f0f0L, 0x0f0f0f0f00000000L, 0xf0f0f0f000000000L
+    };
+
+    private static int defaultEmpties = 14;
+    private static int defaultWLDEmpties = 20;
+
+    private final int moveLists[][];
+    private final int moveScores[][];
+    private TimeManager time;
+    private int bestMove;
+    private long nodes;
+    private int lastScore;
+    private boolean lastExact;
+    private long lastNodes;
+    // The number of empty squares when a win was proven, or -1
+    private int provenWinEmpties;
+
+    /**
+     * Constructs a solver.
+     */
+    public EndgameSolver() {
+        moveLists = new int[65][64];
+        moveScores = new int[65][64];
+        bestMove = NO_MOVE;
+        nodes = 0;
+        provenWinEmpties = -1;
+    }
+
+    /**
+     * Sets the number of empty squares at or below which players switch from
+     * heuristic search to this solver. The default is 14.
+     */
+    public static void setDefaultEmpties(int empties) {
+        if (empties < 0 || empties > 60)
+            throw new IllegalArgumentException("The number of empty squares must be between 0 and 60!");
+        defaultEmpties = empties;
+    }
+
+    /**
+     * Returns the number of empty squares at or below which players switch to
+     * this solver.
+     */
+    public static int getDefaultEmpties() {
+        return defaultEmpties;
+    }
+
+    /**
+     * Sets the number of empty squares at or below which players try to
+     * prove a win with a win/loss/draw solve. The default is 20; it only
+     * matters if it exceeds the number set by {@link #setDefaultEmpties(int)}.
+     */
+    public static void setDefaultWLDEmpties(int empties) {
+        if (empties < 0 || empties > 60)
+            throw new IllegalArgumentException("The number of empty squares must be between 0 and 60!");
+        defaultWLDEmpties = empties;
+    }
+
+    /**
+     * Returns the number of empty squares at or below which players try to
+     * prove a win.
+     */
+    public static int getDefaultWLDEmpties() {
+        return defaultWLDEmpties;
+    }
+
+    /**
+     * Returns the number of nodes searched by this solver so far.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the best move (as a square index) found by the last call to
+     * {@link #solveRoot(long, long, TimeManager)}, or {@link #NO_MOVE}.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Solves the position with the player to move owning <code>own</code> and
+     * the opponent owning <code>opp</code>, recording the best move for
+     * {@link #getBestMove()}.
+     *
+     * @param time stops the solve when the time is up, or <code>null</code>
+     *            for no limit. After an aborted solve, the best move is
+     *            {@link #NO_MOVE} and the returned value is meaningless.
+     * @return the final disc differential under perfect play.
+     */
+    public int solveRoot(long own, long opp, TimeManager time) {
+        return solveRoot(own, opp, -INFINITY, INFINITY, time);
+    }
+
+    /**
+     * Like {@link #solveRoot(long, long, TimeManager)}, but only determines
+     * the value exactly if it lies strictly between <code>alpha</code> and
+     * <code>beta</code>; otherwise the result is a bound.
+     */
+    public int solveRoot(long own, long opp, int alpha, int beta, TimeManager time) {
+        this.time = time;
+        bestMove = NO_MOVE;
+        int empties = 64 - Long.bitCount(own | opp);
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0)
+            return solve(own, opp, alpha, beta, empties);
+
+        nodes++;
+        int list[] = moveLists[empties];
+        int n = order(own, opp, moves, empties, list);
+        int best = -INFINITY;
+        int move = NO_MOVE;
+        for (int i = 0; i < n; i++) {
+            long flips = BitBoard.flips(list[i], own, opp);
+            long placed = 1L << list[i];
+            int v = -solve(opp & ~flips, own | flips | placed, -beta, -Math.max(alpha, best),
+                    empties - 1);
+            if (isAborted())
+                return 0;
+            if (v > best) {
+                best = v;
+                move = list[i];
+                if (v >= beta)
+                    break;
+            }
+        }
+        bestMove = move;
+        return best;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #chooseMove(long, long, TimeManager)}
+     * will attempt to solve a position with the given number of empty
+     * squares.
+     */
+    public boolean willSolve(int empties) {
+        return empties <= Math.max(defaultEmpties, defaultWLDEmpties)
+                || (provenWinEmpties != -1 && empties <= provenWinEmpties);
+    }
+
+    /**
+     * Chooses a move for the position with the player to move owning
+     * <code>own</code> and the opponent owning <code>opp</code> if it is
+     * close enough to the end of the game: the position is solved exactly
+     * with at most {@link #getDefaultEmpties()} empty squares, and solved for
+     * a win with at most {@link #getDefaultWLDEmpties()} empty squares or
+     * once a win has been proven earlier in the game. Only a proven win is
+     * played from a win/loss/draw solve.
+     *
+     * @param time stops the solve when the time is up, or <code>null</code>
+     *            for no limit.
+     * @return the index of the move, or {@link #NO_MOVE} if the position was
+     *         not solved, the solve was aborted or it did not prove a win.
+     */
+    public int chooseMove(long own, long opp, TimeManager time) {
+        int empties = 64 - Long.bitCount(own | opp);
+        if (provenWinEmpties != -1 && empties > provenWinEmpties)
+            /* a new game */
+            provenWinEmpties = -1;
+        if (!willSolve(empties))
+            return NO_MOVE;
+
+        long start = nodes;
+        lastExact = empties <= defaultEmpties;
+        if (lastExact)
+            lastScore = solveRoot(own, opp, time);
+        else
+            lastScore = solveRoot(own, opp, -1, 1, time);
+        lastNodes = nodes - start;
+        if (bestMove == NO_MOVE)
+            return NO_MOVE;
+        if (lastScore > 0)
+            provenWinEmpties = empties;
+        else if (!lastExact) {
+            provenWinEmpties = -1;
+            return NO_MOVE;
+        }
+        return bestMove;
+    }
+
+    /**
+     * Chooses a move for <code>state</code> like
+     * {@link #chooseMove(long, long, TimeManager)}.
+     *
+     * @return the move, or <code>null</code> if the position was not solved.
+     */
+    public Square solve(GameState state, TimeManager time) {
+        GameState.Player player = state.getCurrentPlayer();
+        int move = chooseMove(state.getDiscs(player), state.getDiscs(state.getOpponent(player)),
+                time);
+        return (move == NO_MOVE ? null : Square.of(move));
+    }
+
+    /**
+     * Returns <code>true</code> if the last solve by
+     * {@link #chooseMove(long, long, TimeManager)} was exact rather than
+     * win/loss/draw.
+     */
+    public boolean wasExact() {
+        return lastExact;
+    }
+
+    /**
+     * Returns the result of the last solve by
+     * {@link #chooseMove(long, long, TimeManager)}: the final disc
+     * differential if it was exact, and otherwise positive for a win, zero
+     * for a draw and negative for a loss.
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Returns the number of nodes the last solve by
+     * {@link #chooseMove(long, long, TimeManager)} took.
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    /**
+     * Returns <code>true</code> if a win has been proven in the current game.
+     */
+    public boolean hasProvenWin() {
+        return provenWinEmpties != -1;
+    }
+
+    private boolean isAborted() {
+        return time != null && time.isAborted();
+    }
+
+    /**
+     * Returns the exact value of the position if it lies strictly between
+     * <code>alpha</code> and <code>beta</code>, or a bound otherwise.
+     */
+    private int solve(long own, long opp, int alpha, int beta, int empties) {
+        if (empties <= SHALLOW_EMPTIES)
+            return solveShallow(own, opp, alpha, beta, ~(own | opp), empties);
+        if (time != null && time.isTimeUp())
+            return 0;
+
+        nodes++;
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (BitBoard.legalMoves(opp, own) == 0)
+                return Long.bitCount(own) - Long.bitCount(opp);
+            return -solve(opp, own, -beta, -alpha, empties);
+        }
+
+        int best = -INFINITY;
+        if (empties > FASTEST_FIRST_EMPTIES) {
+            int list[] = moveLists[empties];
+            int n = order(own, opp, moves, empties, list);
+            for (int i = 0; i < n; i++) {
+                long flips = BitBoard.flips(list[i], own, opp);
+                int v = -solve(opp & ~flips, own | flips | (1L << list[i]), -beta,
+                        -Math.max(alpha, best), empties - 1);
+                if (v > best) {
+                    best = v;
+                    if (v >= beta)
+                        break;
+                }
+            }
+            return best;
+        }
+
+        /* parity order: odd quadrants first, then the rest */
+        long odd = oddQuadrants(~(own | opp));
+        for (int pass = 0; pass < 2; pass++) {
+            long m = moves & (pass == 0 ? odd : ~odd);
+            for (; m != 0; m &= m - 1) {
+                int x = Long.numberOfTrailingZeros(m);
+                long flips = BitBoard.flips(x, own, opp);
+                int v = -solve(opp & ~flips, own | flips | (1L << x), -beta,
+                        -Math.max(alpha, best), empties - 1);
+                if (v > best) {
+                    best = v;
+                    if (v >= beta)
+                        return best;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Solves a position with at most four empty squares, the squares in
+     * <code>empty</code>, by trying each of them in parity order.
+     */
+    private int solveShallow(long own, long opp, int alpha, int beta, long empty, int empties) {
+        if (empties == 0)
+            return Long.bitCount(own) - Long.bitCount(opp);
+        if (empties == 1)
+            return solveLast(own, opp, Long.numberOfTrailingZeros(empty));
+
+        nodes++;
+        int best = -INFINITY;
+        long odd = oddQuadrants(empty);
+        for (int pass = 0; pass < 2; pass++) {
+            long m = empty & (pass == 0 ? odd : ~odd);
+            for (; m != 0; m &= m - 1) {
+                int x = Long.numberOfTrailingZeros(m);
+                long flips = BitBoard.flips(x, own, opp);
+                if (flips == 0)
+                    continue;
+                long placed = 1L << x;
+                int v = -solveShallow(opp & ~flips, own | flips | placed, -beta,
+                        -Math.max(alpha, best), empty & ~placed, empties - 1);
+                if (v > best) {
+                    best = v;
+                    if (v >= beta)
+                        return best;
+                }
+            }
+        }
+        if (best != -INFINITY)
+            return best;
+
+        /* no move: pass if the opponent can move, otherwise the game is over */
+        for (long m = empty; m != 0; m &= m - 1)
+            if (BitBoard.flips(Long.numberOfTrailingZeros(m), opp, own) != 0)
+                return -solveShallow(opp, own, -beta, -alpha, empty, empties);
+        return Long.bitCount(own) - Long.bitCount(opp);
+    }
+
+    /**
+     * Returns the final disc differential when only square <code>x</code> is
+     * empty, without making the move.
+     */
+    private int solveLast(long own, long opp, int x) {
+        nodes++;
+        int diff = Long.bitCount(own) - Long.bitCount(opp);
+        int flipped = Long.bitCount(BitBoard.flips(x, own, opp));
+        if (flipped != 0)
+            return diff + 2 * flipped + 1;
+        flipped = Long.bitCount(BitBoard.flips(x, opp, own));
+        if (flipped != 0)
+            return diff - 2 * flipped - 1;
+        return diff;
+    }
+
+    /**
+     * Writes the moves in <code>moves</code> into <code>list</code>, fastest
+     * first (fewest opponent replies), and returns how many there are. Ties
+     * go to moves into odd quadrants, then to the better square.
+     */
+    private int order(long own, long opp, long moves, int empties, int list[]) {
+        int score[] = moveScores[empties];
+        long odd = oddQuadrants(~(own | opp));
+        int n = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int x = Long.numberOfTrailingZeros(moves);
+            long flips = BitBoard.flips(x, own, opp);
+            long replies = BitBoard.legalMoves(opp & ~flips, own | flips | (1L << x));
+            int s = -Long.bitCount(replies) * 64 + (int) ((odd >>> x) & 1) * 32
+                    + MoveOrdering.squareRank(x);
+            int i = n++;
+            for (; i > 0 && score[i - 1] < s; i--) {
+                score[i] = score[i - 1];
+                list[i] = list[i - 1];
+            }
+            score[i] = s;
+            list[i] = x;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the union of the quadrants containing an odd number of the
+     * squares in <code>empty</code>.
+     */
+    private static long oddQuadrants(long empty) {
+        long odd = 0;
+        for (int q = 0; q < 4; q++)
+            if ((Long.bitCount(empty & QUADRANTS[q]) & 1) != 0)
+                odd |= QUADRANTS[q];
+        return odd;
+    }
+}
@@ -0,0 +1,33 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * A heuristic evaluation function on the bitboard representation of a
+ * position. Players that implement {@link MiniMax} can delegate their
+ * {@link MiniMax#staticEvaluator(GameState) staticEvaluator} (or, for the
+ * {@link SearchOthelloPlayer}s, their evaluation of a {@link SearchBoard}) to
+ * an evaluator given with
+ * {@link OthelloPlayer#setEvaluator(Evaluator)}.
+ * <p>
+ * Evaluators are called from every thread of the multi-threaded players at
+ * once, so they must not change any state while evaluating.
+ * </p>
+ *
+ * @see PatternEvaluator
+ */
+public interface Evaluator {
+    /**
+     * The magnitude of every value an evaluator returns is less than this.
+     * Searches score won and lost games from here outwards (see
+     * {@link SearchOthelloPlayer#WIN}), so that proven results always
+     * outrank evaluations.
+     */
+    public static final int WIN = 10000;
+
+    /**
+     * Returns the value of the position in which the player to move owns
+     * <code>own</code> and the other player owns <code>opp</code>, from the
+     * point of view of the player to move. The magnitude of the value must be
+     * less than {@link #WIN}.
+     */
+    public int evaluate(long own, long opp);
+}
@@ -1,6 +1,7 @@
 // package edu.drexel.cs.ai.othello;
 
 import java.util.*;
+import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 //import java.security.SecureRandom;
 
@@ -8,24 +9,38 @@ import java.math.BigInteger;
  * A class for storing all aspects of the game state of Othello, including the
  * board state and current player. This class also includes utilities such as a
  * successor function.
+ * <p>
+ * The board is stored as a pair of 64-bit masks, one per player, so copying a
+ * state only copies two <code>long</code>s.
+ * </p>
  * 
  * @author <a href="http://www.sultanik.com" target="_blank">Evan A.
  *         Sultanik</a>
  */
 public class GameState implements Cloneable {
+    private long player1Discs; /* bit (8 * row + col) is set iff player 1 owns the square */
+    private long player2Discs;
     private Player player;
+    private boolean passResolved; /*
+                                   * false until we have checked whether
+                                   * player has to pass
+                                   */
     private GameState previous;
     private Square move;
     private Random random;
     private HashSet<Square> validMoves1;
     private HashSet<Square> validMoves2;
+    private long moveMask1; /* -1 until the legal move masks are computed */
+    private long moveMask2;
     private int p1score; /*
                           * cache the scores after they're calculated for the
                           * first time
                           */
     private int p2score;
     private HashSet<GameState> successors;
-    private BigInteger hash;
+    private SoftReference<HashSet<GameState>> softSuccessors;
+    private GameStatus status; /* null until first computed */
+    private long zobrist; /* incrementally updated Zobrist key */
 
     /**
      * An enumeration of the possible owners of a square in the game board.
@@ -48,10 +63,6 @@ public class GameState implements Cloneable {
         EMPTY
     }
 
-    enum Direction {
-        UP, DOWN, LEFT, RIGHT, UPLEFT, UPRIGHT, DOWNLEFT, DOWNRIGHT
-    }
-
     /**
      * An enumeration of the possible states of the game.
      * 
@@ -77,7 +88,100 @@ public class GameState implements Cloneable {
         PLAYING
     }
 
-    private Player board[][];
+    /**
+     * An enumeration of the policies for how long a state keeps the
+     * successors and valid moves it has computed.
+     * 
+     * @see GameState#setCacheRetention(CacheRetention)
+     */
+    public enum CacheRetention {
+        /**
+         * Nothing is cached; successors and valid moves are recomputed on
+         * every call.
+         */
+        NONE,
+        /**
+         * Successors are cached behind soft references, so the garbage
+         * collector may reclaim them when memory runs low.
+         */
+        SOFT,
+        /**
+         * Successors are cached for at most a fixed number of states per
+         * thread; the oldest caches of the thread are dropped first.
+         * 
+         * @see GameState#setCacheBound(int)
+         */
+        BOUNDED,
+        /**
+         * Everything is cached for the lifetime of the state. Since successors
+         * refer back to their parents, this keeps every explored state alive
+         * for as long as any of them is reachable.
+         */
+        UNBOUNDED
+    }
+
+    private static CacheRetention cacheRetention = CacheRetention.SOFT;
+    private static volatile int cacheBound = 4096;
+    /* each thread has its own ring, so searching threads neither wait for
+     * nor evict each other */
+    private static final ThreadLocal<BoundedCache> boundedCache = new ThreadLocal<BoundedCache>() {
+        protected BoundedCache initialValue() {
+            return new BoundedCache();
+        }
+    };
+
+    /**
+     * Sets how long states keep the successors and valid moves they have
+     * computed. The default is {@link CacheRetention#SOFT}. The policy applies
+     * to caches filled after the call.
+     */
+    public static void setCacheRetention(CacheRetention retention) {
+        cacheRetention = retention;
+    }
+
+    /**
+     * Returns the current cache retention policy.
+     */
+    public static CacheRetention getCacheRetention() {
+        return cacheRetention;
+    }
+
+    /**
+     * Sets the maximum number of states that keep their successors cached
+     * under the {@link CacheRetention#BOUNDED} policy (4096 by default). The
+     * bound applies to each thread separately; a thread's cache is resized
+     * the next time it caches successors.
+     */
+    public static void setCacheBound(int states) {
+        if (states <= 0)
+            throw new IllegalArgumentException("The cache bound must be positive!");
+        cacheBound = states;
+    }
+
+    /**
+     * The states of one thread that keep their successors under the
+     * {@link CacheRetention#BOUNDED} policy, oldest first from
+     * <code>next</code>.
+     */
+    private static class BoundedCache {
+        private GameState states[] = new GameState[cacheBound];
+        private int next = 0;
+
+        void retain(GameState gs) {
+            if (states.length != cacheBound) {
+                for (GameState s : states)
+                    if (s != null)
+                        s.successors = null;
+                states = new GameState[cacheBound];
+                next = 0;
+            }
+            GameState evicted = states[next];
+            if (evicted != null)
+                evicted.successors = null;
+            states[next] = gs;
+            next = (next + 1) % states.length;
+        }
+    }
 
     /**
      * Constructs a new <code>GameState</code> with the initial board
@@ -99,32 +203,56 @@ public class GameState implements Cloneable {
         init();
     }
 
+    /**
+     * Copy constructor used by {@link #clone()}; it deliberately does not
+     * allocate a new random number generator.
+     */
+    private GameState(GameState gs) {
+        player1Discs = gs.player1Discs;
+        player2Discs = gs.player2Discs;
+        player = gs.player;
+        passResolved = gs.passResolved;
+        previous = gs.previous;
+        move = gs.move;
+        random = gs.random;
+        validMoves1 = null;
+        validMoves2 = null;
+        moveMask1 = -1;
+        moveMask2 = -1;
+        p1score = -1; /* force a recount of the scores */
+        p2score = -1;
+        successors = null;
+        softSuccessors = null;
+        status = null;
+        zobrist = gs.zobrist;
+    }
+
     private void init() {
-        board = new Player[8][8];
-        for (int i = 0; i < 8; i++)
-            for (int j = 0; j < 8; j++)
-                board[i][j] = Player.EMPTY;
         player = (random.nextInt(2) == 0 ? Player.PLAYER1 : Player.PLAYER2);
+        /* the player to move always owns e3 and d4 */
+        long toMove = bit(3, 4) | bit(4, 3);
+        long other = bit(3, 3) | bit(4, 4);
         if (player == Player.PLAYER2) {
-            board[3][3] = Player.PLAYER1;
-            board[3][4] = Player.PLAYER2;
-            board[4][3] = Player.PLAYER2;
-            board[4][4] = Player.PLAYER1;
+            player1Discs = other;
+            player2Discs = toMove;
         }
         else {
-            board[3][3] = Player.PLAYER2;
-            board[3][4] = Player.PLAYER1;
-            board[4][3] = Player.PLAYER1;
-            board[4][4] = Player.PLAYER2;
+            player1Discs = toMove;
+            player2Discs = other;
         }
         previous = null;
         move = null;
         validMoves1 = null;
         validMoves2 = null;
+        moveMask1 = -1;
+        moveMask2 = -1;
         p1score = -1;
         p2score = -1;
         successors = null;
-        hash = null;
+        softSuccessors = null;
+        status = null;
+        passResolved = true;
+        zobrist = Zobrist.hash(player1Discs, player2Discs, player == Player.PLAYER2);
     }
 
     /**
@@ -132,31 +260,54 @@ public class GameState implements Cloneable {
      * preceding states are not cloned.
      */
     public Object clone() {
-        GameState gs = new GameState();
-        gs.board = new Player[8][8];
-        for (int i = 0; i < 8; i++)
-            for (int j = 0; j < 8; j++)
-                gs.board[i][j] = board[i][j];
-        gs.player = player;
-        gs.previous = previous;
-        gs.move = move;
-        gs.random = random;
-        gs.validMoves1 = null;
-        gs.validMoves2 = null;
-        gs.p1score = -1; /* force a recount of the scores */
-        gs.p2score = -1;
-        gs.successors = null;
-        gs.hash = hash;
-        return gs;
+        return new GameState(this);
+    }
+
+    /**
+     * Returns the bit mask of the given square in the bitboard representation.
+     */
+    static long bit(int row, int col) {
+        return 1L << (8 * row + col);
+    }
+
+    /**
+     * Returns a bit mask of the squares owned by <code>player</code>; bit
+     * <code>8 * row + col</code> is set iff the player owns that square.
+     */
+    public long getDiscs(Player player) {
+        if (player == Player.PLAYER1)
+            return player1Discs;
+        else if (player == Player.PLAYER2)
+            return player2Discs;
+        else
+            return ~(player1Discs | player2Discs);
     }
 
     /**
      * Returns the player whose turn it is to make a move.
      */
     public Player getCurrentPlayer() {
+        if (!passResolved)
+            resolvePass();
         return player;
     }
 
+    /**
+     * Skips the turn of the player to move if that player has no valid
+     * moves. {@link #applyMove(Square, boolean)} defers this check until the
+     * current player (or anything that depends on it) is first requested, so
+     * that states which are only evaluated statically never pay for the
+     * opponent's move generation.
+     */
+    private void resolvePass() {
+        if (legalMoveMask(player) == 0) {
+            /* the other player has no valid moves, so their turn is skipped */
+            player = getOpponent(player);
+            zobrist ^= Zobrist.PLAYER2_TO_MOVE;
+        }
+        passResolved = true;
+    }
+
     /**
      * Returns the random number generator for this game.
      */
@@ -182,8 +333,13 @@ public class GameState implements Cloneable {
     public Player getSquare(int row, int col) {
         if (row < 0 || row >= 8 || col < 0 || col >= 8)
             return null;
+        long b = bit(row, col);
+        if ((player1Discs & b) != 0)
+            return Player.PLAYER1;
+        else if ((player2Discs & b) != 0)
+            return Player.PLAYER2;
         else
-            return board[row][col];
+            return Player.EMPTY;
     }
 
     /**
@@ -193,133 +349,44 @@ public class GameState implements Cloneable {
         return getSquare(square.row, square.col);
     }
 
-    Square wouldFlip(Square move, Player player, Direction direction) {
-        int row = move.row;
-        int col = move.col;
-        switch (direction) {
-        case UP:
-            for (row = move.row - 1; row >= 0; row--) {
-                if (board[row][move.col] == getOpponent(player))
-                    continue;
-                else if (board[row][move.col] == Player.EMPTY)
-                    return null;
-                else if (board[row][move.col] == player) {
-                    if (row == move.row - 1)
-                        return null;
-                    return new Square(row, move.col);
-                }
-            }
-            return null;
-        case DOWN:
-            for (row = move.row + 1; row <= 7; row++) {
-                if (board[row][move.col] == getOpponent(player))
-                    continue;
-                else if (board[row][move.col] == Player.EMPTY)
-                    return null;
-                else if (board[row][move.col] == player) {
-                    if (row == move.row + 1)
-                        return null;
-                    return new Square(row, move.col);
-                }
-            }
-            return null;
-        case LEFT:
-            for (col = move.col - 1; col >= 0; col--) {
-                if (board[move.row][col] == getOpponent(player))
-                    continue;
-                else if (board[move.row][col] == Player.EMPTY)
-                    return null;
-                else if (board[move.row][col] == player) {
-                    if (col == move.col - 1)
-                        return null;
-                    return new Square(move.row, col);
-                }
-            }
-            return null;
-        case RIGHT:
-            for (col = move.col + 1; col <= 7; col++) {
-                if (board[move.row][col] == getOpponent(player))
-                    continue;
-                else if (board[move.row][col] == Player.EMPTY)
-                    return null;
-                else if (board[move.row][col] == player) {
-                    if (col == move.col + 1)
-                        return null;
-                    return new Square(move.row, col);
-                }
-            }
-            return null;
-        case UPLEFT:
-            while (--row >= 0 && --col >= 0) {
-                if (board[row][col] == getOpponent(player))
-                    continue;
-                else if (board[row][col] == Player.EMPTY)
-                    return null;
-                else if (board[row][col] == player) {
-                    if (row == move.row - 1 && col == move.col - 1)
-                        return null;
-                    return new Square(row, col);
-                }
-            }
-            return null;
-        case UPRIGHT:
-            while (--row >= 0 && ++col <= 7) {
-                if (board[row][col] == getOpponent(player))
-                    continue;
-                else if (board[row][col] == Player.EMPTY)
-                    return null;
-                else if (board[row][col] == player) {
-                    if (row == move.row - 1 && col == move.col + 1)
-                        return null;
-                    return new Square(row, col);
-                }
-            }
-            return null;
-        case DOWNLEFT:
-            while (++row <= 7 && --col >= 0) {
-                if (board[row][col] == getOpponent(player))
-                    continue;
-                else if (board[row][col] == Player.EMPTY)
-                    return null;
-                else if (board[row][col] == player) {
-                    if (row == move.row + 1 && col == move.col - 1)
-                        return null;
-                    return new Square(row, col);
-                }
-            }
-            return null;
-        case DOWNRIGHT:
-            while (++row <= 7 && ++col <= 7) {
-                if (board[row][col] == getOpponent(player))
-                    continue;
-                else if (board[row][col] == Player.EMPTY)
-                    return null;
-                else if (board[row][col] == player) {
-                    if (row == move.row + 1 && col == move.col + 1)
-                        return null;
-                    return new Square(row, col);
-                }
-            }
-            return null;
-        default:
-            return null;
-        }
-    }
-
     /**
      * Returns <code>true</code> if and only if <code>move</code> is legal for
      * <code>player</code>.
      */
     public boolean isLegalMove(Square move, Player player) {
-        int row = move.row;
-        int col = move.col;
-        if (board[row][col] != Player.EMPTY)
-            return false;
-        for (Direction d : Direction.values()) {
-            if (wouldFlip(move, player, d) != null)
-                return true;
+        return (legalMoveMask(player) & bit(move.row, move.col)) != 0;
+    }
+
+    /**
+     * Returns a bit mask of the valid moves for the current player.
+     * 
+     * @see #legalMoveMask(Player)
+     */
+    public long legalMoveMask() {
+        return legalMoveMask(getCurrentPlayer());
+    }
+
+    /**
+     * Returns a bit mask of all valid moves that may be taken by
+     * <code>player</code> from this state; bit <code>8 * row + col</code> is
+     * set iff the move to that square is legal. Unlike
+     * {@link #getValidMoves(Player)}, this does not allocate anything, so
+     * search code can iterate over the moves with
+     * {@link Long#numberOfTrailingZeros(long)}.
+     */
+    public long legalMoveMask(Player player) {
+        if (player == Player.PLAYER1) {
+            if (moveMask1 == -1)
+                moveMask1 = BitBoard.legalMoves(player1Discs, player2Discs);
+            return moveMask1;
         }
-        return false;
+        else if (player == Player.PLAYER2) {
+            if (moveMask2 == -1)
+                moveMask2 = BitBoard.legalMoves(player2Discs, player1Discs);
+            return moveMask2;
+        }
+        else
+            return 0;
     }
 
     /**
@@ -337,16 +404,14 @@ public class GameState implements Cloneable {
         HashSet<Square> moves = (player == Player.PLAYER1 ? validMoves1 : validMoves2);
         if (moves != null)
             return moves;
-        moves = new HashSet<Square>();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                //for (Direction d : Direction.values()) {
-                    Square m = new Square(i, j);
-                    if (isLegalMove(m, player))
-                        moves.add(m);
-               // }
-            }
+        long mask = legalMoveMask(player);
+        moves = new HashSet<Square>(2 * Long.bitCount(mask));
+        for (; mask != 0; mask &= mask - 1) {
+            int idx = Long.numberOfTrailingZeros(mask);
+            moves.add(Square.of(idx));
         }
+        if (cacheRetention == CacheRetention.NONE)
+            return moves;
         if (player == Player.PLAYER1)
             validMoves1 = moves;
         else
@@ -362,13 +427,7 @@ public class GameState implements Cloneable {
             return p1score;
         else if (player == Player.PLAYER2 && p2score >= 0)
             return p2score;
-        int count = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == player)
-                    count++;
-            }
-        }
+        int count = Long.bitCount(getDiscs(player));
         if (player == Player.PLAYER1)
             p1score = count;
         else if (player == Player.PLAYER2)
@@ -393,21 +452,34 @@ public class GameState implements Cloneable {
 
     /**
      * Returns the current status of the game.
+     * <p>
+     * The game is over when the board is full, when one player has no discs
+     * left, or when neither player has a valid move. The checks are made from
+     * cheapest to most expensive and the result is cached.
+     * </p>
      */
     public GameStatus getStatus() {
-        if (getValidMoves(Player.PLAYER1).size() <= 0 && getValidMoves(Player.PLAYER2).size() <= 0) {
-            int p1score = getScore(Player.PLAYER1);
-            int p2score = getScore(Player.PLAYER2);
+        if (status != null)
+            return status;
+        boolean over;
+        if ((player1Discs | player2Discs) == -1L || player1Discs == 0 || player2Discs == 0)
+            over = true;
+        else
+            /* player may still be unresolved, in which case it is the likelier one to move */
+            over = legalMoveMask(player) == 0 && legalMoveMask(getOpponent(player)) == 0;
+        if (!over)
+            status = GameStatus.PLAYING;
+        else {
+            int p1score = Long.bitCount(player1Discs);
+            int p2score = Long.bitCount(player2Discs);
             if (p1score > p2score)
-                return GameStatus.PLAYER1WON;
+                status = GameStatus.PLAYER1WON;
             else if (p1score < p2score)
-                return GameStatus.PLAYER2WON;
+                status = GameStatus.PLAYER2WON;
             else
-                return GameStatus.TIE;
-        }
-        else {
-            return GameStatus.PLAYING;
+                status = GameStatus.TIE;
         }
+        return status;
     }
 
     /**
@@ -429,25 +501,126 @@ public class GameState implements Cloneable {
      * memory if the back-references are not required.
      * </p>
      * 
+     * <p>
+     * Whether and how long the result is cached depends on the
+     * {@link #setCacheRetention(CacheRetention) cache retention policy}.
+     * </p>
+     * 
      * @param includePreviousStateReference whether or not the returned states
      *            should have back-references to <code>this</code>.
      * @see #applyMove(Square, boolean)
      */
     public AbstractSet<GameState> getSuccessors(boolean includePreviousStateReference) {
-        if (successors != null)
-            return successors;
-        Square moves[] = getValidMoves().toArray(new Square[0]);
-        successors = new HashSet<GameState>(moves.length);
-        for (int i = 0; i < moves.length; i++) {
+        HashSet<GameState> succ = successors;
+        if (succ == null && softSuccessors != null)
+            succ = softSuccessors.get();
+        if (succ != null)
+            return succ;
+        long moves = legalMoveMask();
+        succ = new HashSet<GameState>(2 * Long.bitCount(moves));
+        for (; moves != 0; moves &= moves - 1) {
             try {
-                successors.add(applyMove(moves[i], includePreviousStateReference));
+                succ.add(applyMove(Square.of(Long.numberOfTrailingZeros(moves)),
+                        includePreviousStateReference));
             }
             catch (InvalidMoveException ime) {
                 /* This should not happen! */
                 System.err.println(ime.toString());
             }
         }
-        return successors;
+        switch (cacheRetention) {
+        case SOFT:
+            softSuccessors = new SoftReference<HashSet<GameState>>(succ);
+            break;
+        case BOUNDED:
+            successors = succ;
+            boundedCache.get().retain(this);
+            break;
+        case UNBOUNDED:
+            successors = succ;
+            break;
+        default:
+            break;
+        }
+        return succ;
+    }
+
+    /**
+     * Returns an iterator over the states that may succeed this state, in the
+     * order given by <code>order</code> (or in square index order if
+     * <code>order</code> is <code>null</code>). Unlike
+     * {@link #getSuccessors(boolean)}, each successor is only created when
+     * {@link Iterator#next()} is called and nothing is cached, so a search that
+     * stops iterating early (<i>e.g.</i> on an alpha-beta cutoff) never pays
+     * for the remaining successors.
+     * 
+     * @param order the order in which to generate the successors, or
+     *            <code>null</code>.
+     * @param includePreviousStateReference whether or not the returned states
+     *            should have back-references to <code>this</code>.
+     * @see #getSuccessors(boolean)
+     */
+    public Iterator<GameState> successorIterator(Comparator<? super Square> order,
+            boolean includePreviousStateReference) {
+        return new SuccessorIterator(order, includePreviousStateReference);
+    }
+
+    private class SuccessorIterator implements Iterator<GameState> {
+        private Square moves[];
+        private int next;
+        private boolean includePreviousStateReference;
+
+        SuccessorIterator(Comparator<? super Square> order, boolean includePreviousStateReference) {
+            long mask = legalMoveMask();
+            moves = new Square[Long.bitCount(mask)];
+            for (int i = 0; mask != 0; mask &= mask - 1)
+                moves[i++] = Square.of(Long.numberOfTrailingZeros(mask));
+            if (order != null)
+                Arrays.sort(moves, order);
+            next = 0;
+            this.includePreviousStateReference = includePreviousStateReference;
+        }
+
+        public boolean hasNext() {
+            return next < moves.length;
+        }
+
+        public GameState next() {
+            if (next >= moves.length)
+                throw new NoSuchElementException();
+            return applyMove(moves[next++], includePreviousStateReference);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Drops the successors and valid moves cached by this state, making the
+     * states explored from it eligible for garbage collection.
+     */
+    public void clearCaches() {
+        successors = null;
+        softSuccessors = null;
+        validMoves1 = null;
+        validMoves2 = null;
+    }
+
+    /**
+     * Cuts the chain of previous states so that at most <code>keep</code>
+     * states precede this one; older states become eligible for garbage
+     * collection. With <code>keep == 0</code>, {@link #getPreviousState()}
+     * will return <code>null</code>.
+     * 
+     * @see #getPreviousState()
+     */
+    public void pruneHistory(int keep) {
+        GameState gs = this;
+        for (int i = 0; i < keep && gs != null; i++)
+            gs = gs.previous;
+        if (gs != null)
+            gs.previous = null;
     }
 
     /**
@@ -485,106 +658,44 @@ public class GameState implements Cloneable {
      */
     public GameState applyMove(Square move, boolean includePreviousStateReference)
             throws InvalidMoveException {
-        Square bracket;
-        boolean found_good_direction = false;
-        int row;
-        int col;
-        GameState newState = (GameState) clone();
-        Player player = getCurrentPlayer();
-        newState.previous = (includePreviousStateReference ? this : null);
-        newState.move = move;
-
         if (move == null) {
             throw new InvalidMoveException(move, getCurrentPlayer(),
                     "The move sent to GameState.applyMove() was null!");
         }
 
-        if (board[move.row][move.col] != Player.EMPTY)
-            throw new InvalidMoveException(move, getCurrentPlayer(), "The space is not empty!");
-
-        bracket = wouldFlip(move, player, Direction.UP);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (--row != bracket.row)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.DOWN);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (++row != bracket.row)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.LEFT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (--col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.RIGHT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (++col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.UPLEFT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (--row != bracket.row && --col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.UPRIGHT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (--row != bracket.row && ++col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.DOWNLEFT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (++row != bracket.row && --col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        bracket = wouldFlip(move, player, Direction.DOWNRIGHT);
-        if (bracket != null) {
-            found_good_direction = true;
-            row = move.row;
-            col = move.col;
-            while (++row != bracket.row && ++col != bracket.col)
-                newState.board[row][col] = player;
-        }
-
-        if (found_good_direction)
-            newState.board[move.row][move.col] = player;
-        else
+        Player player = getCurrentPlayer();
+        if (move.row < 0 || move.row >= 8 || move.col < 0 || move.col >= 8)
+            throw new InvalidMoveException(move, player, "The space is not on the board!");
+        int idx = 8 * move.row + move.col;
+        long placed = 1L << idx;
+        if (((player1Discs | player2Discs) & placed) != 0)
+            throw new InvalidMoveException(move, player, "The space is not empty!");
+
+        long own = getDiscs(player);
+        long opp = getDiscs(getOpponent(player));
+        long flipped = BitBoard.flips(idx, own, opp);
+        if (flipped == 0)
             throw new InvalidMoveException(move, player,
                     "This move does not flip any of the opponents' pieces!");
 
+        GameState newState = (GameState) clone();
+        newState.previous = (includePreviousStateReference ? this : null);
+        newState.move = Square.of(idx);
+        own |= flipped | placed;
+        opp &= ~flipped;
+        if (player == Player.PLAYER1) {
+            newState.player1Discs = own;
+            newState.player2Discs = opp;
+            newState.zobrist ^= Zobrist.PLAYER1[idx];
+        }
+        else {
+            newState.player1Discs = opp;
+            newState.player2Discs = own;
+            newState.zobrist ^= Zobrist.PLAYER2[idx];
+        }
+        newState.zobrist ^= Zobrist.flip(flipped) ^ Zobrist.PLAYER2_TO_MOVE;
         newState.player = getOpponent(player);
-
-        if (newState.getValidMoves().size() <= 0)
-            /* the other player has no valid moves, so their turn is skipped */
-            newState.player = player;
+        newState.passResolved = false;
 
         return newState;
     }
@@ -653,20 +764,10 @@ public class GameState implements Cloneable {
         if (!(o instanceof GameState))
             return false;
         GameState gs = (GameState) o;
-        if (gs.player != player)
-            return false;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != gs.board[i][j])
-                    return false;
-            }
-        }
-        return true;
+        return gs.player1Discs == player1Discs && gs.player2Discs == player2Discs
+                && gs.getCurrentPlayer() == getCurrentPlayer();
     }
 
-    private static BigInteger multiplier[] = null;
-    private static BigInteger two = new BigInteger("2");
-
     /**
      * Returns a unique number identifying this GameState.
      * 
@@ -710,43 +811,146 @@ public class GameState implements Cloneable {
      * </table>
      * </p>
      * 
+     * <p>
+     * The number encodes the two players' disc masks and the player to move;
+     * use {@link #getZobristKey()} where a fixed-size key suffices.
+     * </p>
+     * 
      * @see #equals(Object)
      * @see #hashCode()
      */
     public BigInteger uniqueHashCode() {
-        if (hash == null) {
-            hash = (player == Player.PLAYER1 ? BigInteger.ZERO : BigInteger.ONE);
-            int i, j, idx = 0;
-            if (multiplier == null) {
-                BigInteger three = new BigInteger("3");
-                multiplier = new BigInteger[64];
-                multiplier[0] = three;
-                for (i = 1; i < 64; i++)
-                    multiplier[i] = multiplier[i - 1].multiply(three);
-            }
-            for (i = 0; i < 8; i++) {
-                for (j = 0; j < 8; j++) {
-                    Player p = getSquare(i, j);
-                    if (p == Player.EMPTY)
-                        idx++;
-                    else
-                        hash.add(multiplier[idx++].multiply(p == Player.PLAYER1 ? BigInteger.ONE
-                                : two));
-                }
-            }
+        byte bytes[] = new byte[17];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (player2Discs >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (player1Discs >>> (56 - 8 * i));
         }
-        return hash;
+        bytes[16] = (byte) (getCurrentPlayer() == Player.PLAYER1 ? 0 : 1);
+        return new BigInteger(1, bytes);
     }
 
     /**
-     * Equivalent to calling {@link Object#hashCode() hashCode()} on
-     * the result of {@link #uniqueHashCode() uniqueHashCode()}.
+     * Returns the 64-bit Zobrist key of this state. The key is maintained
+     * incrementally by {@link #applyMove(Square, boolean)}, so this is O(1) and
+     * does not allocate; at most once per state it may have to check whether
+     * the player to move must pass. Equal states always have equal keys;
+     * unequal states collide only with negligible probability.
      * 
-     * @see #equals(Object)
      * @see #hashCode()
      */
+    public long getZobristKey() {
+        if (!passResolved)
+            resolvePass();
+        return zobrist;
+    }
+
+    /**
+     * Returns a hash code derived from the {@link #getZobristKey() Zobrist
+     * key} of this state.
+     * 
+     * @see #equals(Object)
+     * @see #getZobristKey()
+     */
     public int hashCode() {
-        return uniqueHashCode().hashCode();
+        long key = getZobristKey();
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * The number of symmetries of the board: the four rotations, each with and
+     * without a reflection. Symmetry <code>s</code> transposes the board about
+     * the a1-h8 diagonal if bit 2 of <code>s</code> is set, then mirrors it
+     * left to right if bit 0 is set and flips it top to bottom if bit 1 is
+     * set; symmetry zero is the identity. All transforms are a handful of
+     * shifts and masks on the disc masks.
+     */
+    public static final int SYMMETRIES = BitBoard.SYMMETRIES;
+
+    /**
+     * Returns a copy of this state with the given symmetry applied to the
+     * board (and to {@link #getPreviousMove()}). The copy has no previous
+     * state.
+     *
+     * @throws IllegalArgumentException if <code>symmetry</code> is not
+     *             between zero and {@link #SYMMETRIES}<code> - 1</code>.
+     */
+    public GameState transform(int symmetry) {
+        if (symmetry < 0 || symmetry >= SYMMETRIES)
+            throw new IllegalArgumentException("There is no symmetry " + symmetry + "!");
+        GameState gs = new GameState(this);
+        gs.player = getCurrentPlayer();
+        gs.passResolved = true;
+        gs.player1Discs = BitBoard.transform(player1Discs, symmetry);
+        gs.player2Discs = BitBoard.transform(player2Discs, symmetry);
+        gs.previous = null;
+        gs.move = (move == null ? null : transformSquare(move, symmetry));
+        gs.zobrist = Zobrist.hash(gs.player1Discs, gs.player2Discs, gs.player == Player.PLAYER2);
+        return gs;
+    }
+
+    /**
+     * Returns the symmetry that {@link #transform(int) transforms} this state
+     * into its canonical form, which is the same for all symmetric states. A
+     * move in the canonical form is mapped back to this state with
+     * {@link #inverseTransformSquare(Square, int)}.
+     */
+    public int getCanonicalSymmetry() {
+        Player p = getCurrentPlayer();
+        return BitBoard.canonicalSymmetry(getDiscs(p), getDiscs(getOpponent(p)));
+    }
+
+    /**
+     * Returns the canonical form of this state.
+     *
+     * @see #getCanonicalSymmetry()
+     */
+    public GameState getCanonicalState() {
+        return transform(getCanonicalSymmetry());
+    }
+
+    /**
+     * Returns the {@link #getZobristKey() Zobrist key} of the canonical form
+     * of this state, so that all symmetric states share one key. Unlike
+     * {@link #getCanonicalState()}, this does not allocate anything.
+     */
+    public long getCanonicalKey() {
+        int symmetry = getCanonicalSymmetry();
+        return Zobrist.hash(BitBoard.transform(player1Discs, symmetry), BitBoard.transform(
+                player2Discs, symmetry), getCurrentPlayer() == Player.PLAYER2);
+    }
+
+    /**
+     * Returns the square that <code>square</code> is moved to by the given
+     * symmetry.
+     *
+     * @see #transform(int)
+     */
+    public static Square transformSquare(Square square, int symmetry) {
+        return Square.of(Long.numberOfTrailingZeros(BitBoard.transform(1L << square.getIndex(),
+                symmetry)));
+    }
+
+    /**
+     * Returns the square that the given symmetry moves to <code>square</code>;
+     * this maps a move in a transformed state back to the original state.
+     */
+    public static Square inverseTransformSquare(Square square, int symmetry) {
+        return Square.of(Long.numberOfTrailingZeros(BitBoard.inverseTransform(
+                1L << square.getIndex(), symmetry)));
+    }
+
+    /**
+     * Returns a bit mask of the valid moves for the current player, leaving
+     * out every move that leads to the same position, up to symmetry, as a
+     * move to a lower square. In the initial position, for example, only one
+     * of the four moves is left. Searching only these moves at the root gives
+     * the same result with less work.
+     *
+     * @see #legalMoveMask()
+     */
+    public long distinctMoveMask() {
+        Player p = getCurrentPlayer();
+        return BitBoard.distinctMoves(getDiscs(p), getDiscs(getOpponent(p)), legalMoveMask(p));
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,40 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+
+/**
+ * A {@link TranspositionTable} stored in a preallocated <code>long[]</code> on
+ * the Java heap.
+ */
+public class HeapTranspositionTable extends TranspositionTable {
+    private final long table[];
+
+    /**
+     * Constructs a table of at most <code>megabytes</code> megabytes, and at
+     * most 8 GB: a Java array has fewer than 2<sup>31</sup> elements, so
+     * 2<sup>30</sup> <code>long</code>s (2<sup>29</sup> entries of two) is
+     * the largest power-of-two table that fits in one. Use an
+     * {@link OffHeapTranspositionTable} for larger tables.
+     */
+    public HeapTranspositionTable(long megabytes, Replacement replacement) {
+        super(entriesFor(Math.min(megabytes, 8192)), replacement);
+        table = new long[(int) (2 * getCapacity())];
+    }
+
+    protected long readKey(long slot) {
+        return table[(int) (2 * slot)];
+    }
+
+    protected long readData(long slot) {
+        return table[(int) (2 * slot + 1)];
+    }
+
+    protected void write(long slot, long key, long data) {
+        table[(int) (2 * slot)] = key;
+        table[(int) (2 * slot + 1)] = data;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+}
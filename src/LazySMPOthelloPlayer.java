@@ -0,0 +1,198 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+
+/**
+ * A multi-threaded player using Lazy SMP: while the main thread runs the
+ * usual iterative-deepening principal variation search, a number of helper
+ * threads search the same root position independently. All threads share one
+ * transposition table, so the helpers fill it with results (bounds and best
+ * moves) that let the main thread cut off or order moves it has not yet
+ * searched itself. The helpers follow the depth of the main thread, half of
+ * them one ply ahead of it, so that they do not all search the same tree in
+ * lockstep.
+ * <p>
+ * The table is lock-free (see {@link TranspositionTable}), so the threads
+ * never wait for each other. The move played is always that of the main
+ * thread's last completed iteration; the helpers are stopped as soon as the
+ * main thread is done.
+ * </p>
+ */
+public class LazySMPOthelloPlayer extends SearchOthelloPlayer {
+    private static int defaultThreads = Runtime.getRuntime().availableProcessors();
+
+    private final int threads;
+    private final TranspositionTable table;
+    private final NegaScoutSearch search;
+    private final NegaScoutSearch helperSearches[];
+
+    // Search state of the current move
+    private GameState root;
+    private Helper helpers[];
+    private volatile int mainDepth;
+
+    /**
+     * Constructs a player that searches as deep as its time allows with the
+     * default number of threads.
+     *
+     * @param name the name of the player
+     */
+    public LazySMPOthelloPlayer(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructs a player that searches at most <code>depthLimit</code> plies
+     * deep, or as deep as its time allows if it is <code>-1</code>, with the
+     * default number of threads.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     */
+    public LazySMPOthelloPlayer(String name, int depthLimit) {
+        this(name, depthLimit, defaultThreads);
+    }
+
+    /**
+     * Constructs a player that searches with the given number of threads,
+     * including the main thread.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     * @param threads the number of threads to search with
+     */
+    public LazySMPOthelloPlayer(String name, int depthLimit, int threads) {
+        super(name, depthLimit);
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed!");
+        this.threads = threads;
+        table = TranspositionTable.create();
+        search = new NegaScoutSearch(this, table);
+        helperSearches = new NegaScoutSearch[threads - 1];
+        for (int i = 0; i < helperSearches.length; i++)
+            helperSearches[i] = new NegaScoutSearch(this, table);
+    }
+
+    /**
+     * Sets the number of threads used by players constructed without an
+     * explicit thread count. By default this is the number of available
+     * processors.
+     */
+    public static void setDefaultThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed!");
+        defaultThreads = threads;
+    }
+
+    /**
+     * Returns the number of threads used by players constructed without an
+     * explicit thread count.
+     */
+    public static int getDefaultThreads() {
+        return defaultThreads;
+    }
+
+    /**
+     * Returns the number of threads this player searches with.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Chooses a move with the main thread, which starts the helper threads
+     * once it begins to search (see
+     * {@link #searchIteration(SearchBoard, int, int)}), and stops the helpers
+     * again.
+     */
+    public Square getMove(GameState currentState, Date deadline) {
+        root = currentState;
+        try {
+            return super.getMove(currentState, deadline);
+        }
+        finally {
+            stopHelpers();
+            root = null;
+        }
+    }
+
+    /**
+     * Searches one iteration with the main thread, starting the helpers
+     * before the first. Positions answered from the opening book, solved by
+     * the endgame solver or with a single legal move never get this far, so
+     * they never start the helpers.
+     */
+    protected int searchIteration(SearchBoard board, int depth, int previousScore) {
+        mainDepth = depth;
+        if (helpers == null && helperSearches.length > 0) {
+            helpers = new Helper[helperSearches.length];
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new Helper(helperSearches[i], new SearchBoard(root), i + 1);
+                helpers[i].thread.start();
+            }
+        }
+        search.start(board, time);
+        int score = search.search(depth, -INFINITY, INFINITY, 0);
+        collectStatistics(search);
+        return score;
+    }
+
+    /**
+     * Stops the helper threads, if they were started, and waits for them.
+     */
+    private void stopHelpers() {
+        if (helpers == null)
+            return;
+        for (Helper h : helpers)
+            h.time.abort();
+        for (Helper h : helpers) {
+            try {
+                h.thread.join();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            collectStatistics(h.search);
+        }
+        helpers = null;
+    }
+
+    protected int getIterationMove() {
+        return search.getRootMove();
+    }
+
+    /**
+     * A helper thread. Each iteration it searches the depth of the main
+     * thread's current iteration, odd helpers one ply deeper, or one ply
+     * deeper than its own last iteration if it is already ahead; it stops
+     * once the main thread aborts its time manager. Its results only reach
+     * the main thread through the shared table.
+     */
+    private class Helper implements Runnable {
+        final NegaScoutSearch search;
+        final SearchBoard board;
+        final TimeManager time;
+        final Thread thread;
+        final int offset;
+
+        Helper(NegaScoutSearch search, SearchBoard board, int id) {
+            this.search = search;
+            this.board = board;
+            offset = id & 1;
+            time = new TimeManager(TimeManager.UNLIMITED);
+            thread = new Thread(this, getName() + " helper " + id);
+            thread.setDaemon(true);
+        }
+
+        public void run() {
+            search.start(board, time);
+            int depth = 0;
+            while (!time.isAborted()) {
+                depth = Math.max(depth + 1, mainDepth + offset);
+                if (depth > board.getEmpties())
+                    break;
+                search.search(depth, -INFINITY, INFINITY, 0);
+            }
+        }
+    }
+}
@@ -47,6 +47,9 @@ public class MMOthelloPlayer extends OthelloPlayer implements MiniMax{
      */
     @Override
     public Square getMove(GameState currentState, Date deadline) {
+        Square book = getBookMove(currentState);
+        if (book != null) return book;
+
         AbstractSet<GameState> successors = currentState.getSuccessors(true);
 
         GameState optimalState = null;
@@ -156,6 +159,15 @@ public class MMOthelloPlayer extends OthelloPlayer implements MiniMax{
     @Override
     public int staticEvaluator(GameState state) {
         staticEvaluations++;
+        return evaluate(state);
+    }
+
+    /**
+     * The value of the simple static evaluation function, used when no
+     * {@link Evaluator} is set.
+     */
+    @Override
+    protected int heuristic(GameState state) {
         return state.getScore(state.getCurrentPlayer());
     }
 
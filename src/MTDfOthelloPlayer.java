@@ -0,0 +1,94 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * A player that chooses moves by MTD(f) inside iterative deepening. Each
+ * iteration starts from a guess (the score of the previous iteration) and
+ * narrows the bounds on the true score with a sequence of zero-window
+ * alpha-beta searches, each of which reuses the transposition table entries
+ * left by the passes before it. Zero-window searches prune far more than
+ * full-window ones, so with a large enough table MTD(f) usually needs fewer
+ * nodes than principal variation search.
+ * <p>
+ * The zero-window searches are done by a {@link NegaScoutSearch}, which for a
+ * window of width one is plain fail-soft alpha-beta.
+ * </p>
+ */
+public class MTDfOthelloPlayer extends SearchOthelloPlayer {
+    private final NegaScoutSearch search;
+    private int iterationMove;
+    private int passes = 0;
+
+    /**
+     * Constructs a player that searches as deep as its time allows.
+     *
+     * @param name the name of the player
+     */
+    public MTDfOthelloPlayer(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructs a player that searches at most <code>depthLimit</code> plies
+     * deep, or as deep as its time allows if it is <code>-1</code>.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     */
+    public MTDfOthelloPlayer(String name, int depthLimit) {
+        this(name, depthLimit, TranspositionTable.create());
+    }
+
+    /**
+     * Constructs a player that uses the given transposition table. MTD(f)
+     * relies on the table to avoid searching the same nodes on every pass,
+     * so it must not be <code>null</code>.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     * @param table the transposition table to use
+     */
+    public MTDfOthelloPlayer(String name, int depthLimit, TranspositionTable table) {
+        super(name, depthLimit);
+        if (table == null)
+            throw new IllegalArgumentException("MTD(f) requires a transposition table!");
+        search = new NegaScoutSearch(this, table);
+    }
+
+    /**
+     * Returns the number of zero-window searches made so far.
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    protected int searchIteration(SearchBoard board, int depth, int previousScore) {
+        search.start(board, time);
+        int g = previousScore;
+        int lower = -INFINITY;
+        int upper = INFINITY;
+        iterationMove = TranspositionTable.NO_MOVE;
+        while (lower < upper) {
+            int beta = (g == lower ? g + 1 : g);
+            g = search.search(depth, beta - 1, beta, 0);
+            passes++;
+            if (time.isAborted())
+                break;
+            if (g < beta)
+                upper = g;
+            else {
+                lower = g;
+                /* only a pass that fails high proves its best move */
+                iterationMove = search.getRootMove();
+            }
+        }
+        if (iterationMove == TranspositionTable.NO_MOVE)
+            /* every pass failed low; the best move is the one with the highest bound */
+            iterationMove = search.getRootMove();
+        collectStatistics(search);
+        return g;
+    }
+
+    protected int getIterationMove() {
+        return iterationMove;
+    }
+}
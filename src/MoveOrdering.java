@@ -0,0 +1,190 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Comparator;
+
+/**
+ * Orders moves for alpha-beta search so that the moves most likely to cause
+ * a cutoff are searched first. Moves are tried in this order:
+ * <ol>
+ * <li>the best move stored in the transposition table for the position;</li>
+ * <li>the two killer moves of the ply, <i>i.e.</i> the last two moves that
+ * caused a cutoff at the same depth elsewhere in the tree;</li>
+ * <li>all other moves by their history score, which accumulates for every
+ * cutoff a move causes, with ties broken by a static ranking of the squares
+ * (corners first, the squares diagonally next to the corners last).</li>
+ * </ol>
+ * <p>
+ * One instance should be used per search (it is not thread-safe) and kept
+ * across moves so that the history carries over; call {@link #age()} between
+ * moves so that old history fades.
+ * </p>
+ */
+public class MoveOrdering {
+    /**
+     * The deepest ply that is tracked.
+     */
+    public static final int MAX_PLY = 128;
+
+    private static final int TT_MOVE_SCORE = 1 << 30;
+    private static final int KILLER1_SCORE = 1 << 29;
+    private static final int KILLER2_SCORE = 1 << 28;
+    private static final int HISTORY_LIMIT = 1 << 22;
+
+    /**
+     * Static rank of each square: corners are best, the X-squares diagonally
+     * next to the corners and the C-squares next to them along the edges are
+     * worst.
+     */
+    private static final int SQUARE_RANK[] = {
+        15,  2, 10,  9,  9, 10,  2, 15,
+         2,  0,  4,  4,  4,  4,  0,  2,
+        10,  4,  7,  6,  6,  7,  4, 10,
+         9,  4,  6,  5,  5,  6,  4,  9,
+         9,  4,  6,  5,  5,  6,  4,  9,
+        10,  4,  7,  6,  6,  7,  4, 10,
+         2,  0,  4,  4,  4,  4,  0,  2,
+        15,  2, 10,  9,  9, 10,  2, 15
+    };
+
+    private final int killers[][];
+    private final int history[][];
+    private final int scores[][];
+    private final PlyComparator comparators[];
+
+    /**
+     * Constructs a move ordering with empty killer and history tables.
+     */
+    public MoveOrdering() {
+        killers = new int[MAX_PLY][2];
+        history = new int[2][64];
+        scores = new int[MAX_PLY][64];
+        comparators = new PlyComparator[MAX_PLY];
+        for (int i = 0; i < MAX_PLY; i++)
+            comparators[i] = new PlyComparator();
+        clear();
+    }
+
+    /**
+     * Forgets all killer moves and history.
+     */
+    public void clear() {
+        for (int i = 0; i < MAX_PLY; i++) {
+            killers[i][0] = TranspositionTable.NO_MOVE;
+            killers[i][1] = TranspositionTable.NO_MOVE;
+        }
+        for (int i = 0; i < 64; i++) {
+            history[0][i] = 0;
+            history[1][i] = 0;
+        }
+    }
+
+    /**
+     * Forgets the killer moves and halves the history, so that history from
+     * earlier moves of the game counts less than new history.
+     */
+    public void age() {
+        for (int i = 0; i < MAX_PLY; i++) {
+            killers[i][0] = TranspositionTable.NO_MOVE;
+            killers[i][1] = TranspositionTable.NO_MOVE;
+        }
+        for (int i = 0; i < 64; i++) {
+            history[0][i] >>= 1;
+            history[1][i] >>= 1;
+        }
+    }
+
+    /**
+     * Returns the static rank of the square with the given index; higher
+     * ranks are better.
+     */
+    public static int squareRank(int index) {
+        return SQUARE_RANK[index];
+    }
+
+    /**
+     * Returns the ordering score of move <code>move</code> for
+     * <code>player</code> at the given ply; higher scores are searched first.
+     */
+    public int score(int move, int ttMove, int ply, GameState.Player player) {
+        if (move == ttMove)
+            return TT_MOVE_SCORE;
+        ply = Math.min(ply, MAX_PLY - 1);
+        if (move == killers[ply][0])
+            return KILLER1_SCORE;
+        if (move == killers[ply][1])
+            return KILLER2_SCORE;
+        return (history[player.ordinal() & 1][move] << 4) + SQUARE_RANK[move];
+    }
+
+    /**
+     * Writes the moves in <code>moves</code> into <code>moveList</code>, best
+     * first, and returns how many there are. Nothing is allocated.
+     *
+     * @param moves a mask of legal moves.
+     * @param ttMove the best move stored in the transposition table, or
+     *            {@link TranspositionTable#NO_MOVE}.
+     * @param ply the distance from the root of the search.
+     * @param player the player to move.
+     * @param moveList receives the move indices; must hold at least 64.
+     */
+    public int order(long moves, int ttMove, int ply, GameState.Player player, int moveList[]) {
+        int score[] = scores[Math.min(ply, MAX_PLY - 1)];
+        int n = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            int s = score(move, ttMove, ply, player);
+            int i = n++;
+            for (; i > 0 && score[i - 1] < s; i--) {
+                score[i] = score[i - 1];
+                moveList[i] = moveList[i - 1];
+            }
+            score[i] = s;
+            moveList[i] = move;
+        }
+        return n;
+    }
+
+    /**
+     * Returns a comparator that sorts squares best first for use with
+     * {@link GameState#successorIterator(Comparator, boolean)}. The
+     * comparator is reused for every call with the same ply, so it must be
+     * used before the next call for that ply.
+     */
+    public Comparator<Square> comparator(int ttMove, int ply, GameState.Player player) {
+        PlyComparator c = comparators[Math.min(ply, MAX_PLY - 1)];
+        c.ttMove = ttMove;
+        c.ply = ply;
+        c.player = player;
+        return c;
+    }
+
+    /**
+     * Records that <code>move</code> caused a cutoff at the given ply in a
+     * search of the given remaining depth.
+     */
+    public void recordCutoff(int move, int ply, GameState.Player player, int depth) {
+        if (move < 0)
+            return;
+        int k[] = killers[Math.min(ply, MAX_PLY - 1)];
+        if (k[0] != move) {
+            k[1] = k[0];
+            k[0] = move;
+        }
+        int h[] = history[player.ordinal() & 1];
+        h[move] += depth * depth;
+        if (h[move] > HISTORY_LIMIT)
+            for (int i = 0; i < 64; i++)
+                h[i] >>= 1;
+    }
+
+    private class PlyComparator implements Comparator<Square> {
+        int ttMove;
+        int ply;
+        GameState.Player player;
+
+        public int compare(Square x, Square y) {
+            return Integer.compare(score(y.getIndex(), ttMove, ply, player),
+                    score(x.getIndex(), ttMove, ply, player));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * A negamax principal variation search (NegaScout) over a
+ * {@link SearchBoard}. The first move at each node is searched with the full
+ * window; every later move is first searched with a null window to prove that
+ * it is no better, and only re-searched with the full window if that proof
+ * fails. Results are stored in a {@link TranspositionTable} and moves are
+ * ordered with a {@link MoveOrdering}.
+ * <p>
+ * A search object is used by one thread at a time. It makes and undoes moves
+ * on its board without allocating anything per node, and it stops (returning
+ * meaningless values) as soon as its {@link TimeManager} reports that time is
+ * up.
+ * </p>
+ *
+ * @see SearchOthelloPlayer
+ */
+public class NegaScoutSearch {
+    private final SearchOthelloPlayer player;
+    private final TranspositionTable table;
+    private final MoveOrdering ordering;
+    private final int moveLists[][];
+    private SearchBoard board;
+    private TimeManager time;
+    private int rootMove;
+
+    long nodes;
+    long evaluations;
+    long expandedNodes;
+    long totalChildren;
+
+    /**
+     * Constructs a search that evaluates positions with
+     * <code>player</code>'s evaluation function.
+     *
+     * @param table the transposition table to use, or <code>null</code>.
+     */
+    public NegaScoutSearch(SearchOthelloPlayer player, TranspositionTable table) {
+        this.player = player;
+        this.table = table;
+        ordering = new MoveOrdering();
+        moveLists = new int[MoveOrdering.MAX_PLY][64];
+    }
+
+    /**
+     * Prepares a new search of the position on <code>board</code>, which must
+     * have at least one legal move for the player to move.
+     */
+    public void start(SearchBoard board, TimeManager time) {
+        this.board = board;
+        this.time = time;
+        ordering.age();
+        rootMove = TranspositionTable.NO_MOVE;
+    }
+
+    /**
+     * Returns the best move found by the last call to
+     * {@link #search(int, int, int, int)} at ply zero.
+     */
+    public int getRootMove() {
+        return rootMove;
+    }
+
+    /**
+     * Returns the transposition table of this search, or <code>null</code>.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Searches the current position to the given depth and returns its
+     * negamax value from the point of view of the player to move. The value
+     * is exact if it lies strictly between <code>alpha</code> and
+     * <code>beta</code>; otherwise it is a bound (fail-soft).
+     *
+     * @param ply the distance from the root; at ply zero the best move is
+     *            recorded for {@link #getRootMove()}.
+     */
+    public int search(int depth, int alpha, int beta, int ply) {
+        if (time.isTimeUp())
+            return 0;
+
+        long moves = board.legalMoveMask();
+        if (moves == 0) {
+            if (board.opponentMoveMask() == 0) {
+                evaluations++;
+                return SearchOthelloPlayer.finalScore(board);
+            }
+            board.pass();
+            int v = -search(depth, -beta, -alpha, ply + 1);
+            board.undoMove();
+            return v;
+        }
+        if (depth <= 0) {
+            evaluations++;
+            return player.evaluate(board);
+        }
+        if (ply == 0)
+            /* moves to symmetric positions have the same value */
+            moves = BitBoard.distinctMoves(board.getOwnDiscs(), board.getOpponentDiscs(), moves);
+
+        long key = board.getZobristKey();
+        int ttMove = TranspositionTable.NO_MOVE;
+        if (table != null) {
+            long entry = table.probe(key);
+            if (entry != 0) {
+                ttMove = TranspositionTable.move(entry);
+                if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= beta)
+                            || (bound == TranspositionTable.UPPER && score <= alpha))
+                        return score;
+                }
+            }
+        }
+
+        int list[] = moveLists[ply];
+        int n = ordering.order(moves, ttMove, ply, board.getCurrentPlayer(), list);
+        expandedNodes++;
+        totalChildren += n;
+
+        int best = -SearchOthelloPlayer.INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+        int a = alpha;
+        for (int i = 0; i < n; i++) {
+            int move = list[i];
+            board.makeMove(move);
+            nodes++;
+            int v;
+            if (i == 0)
+                v = -search(depth - 1, -beta, -a, ply + 1);
+            else {
+                v = -search(depth - 1, -a - 1, -a, ply + 1);
+                if (v > a && v < beta)
+                    v = -search(depth - 1, -beta, -a, ply + 1);
+            }
+            board.undoMove();
+            if (time.isAborted())
+                return 0;
+            if (v > best) {
+                best = v;
+                bestMove = move;
+                if (v > a) {
+                    a = v;
+                    if (a >= beta) {
+                        ordering.recordCutoff(move, ply, board.getCurrentPlayer(), depth);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (table != null) {
+            int bound = (best <= alpha ? TranspositionTable.UPPER
+                    : (best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT));
+            table.store(key, depth, bound, best, bestMove);
+        }
+        if (ply == 0)
+            rootMove = bestMove;
+        return best;
+    }
+}
@@ -0,0 +1,58 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link TranspositionTable} stored outside of the Java heap in direct
+ * {@link ByteBuffer}s, packed as 16-byte entries. The table is allocated once
+ * when it is constructed, so however large it is, it neither adds to the heap
+ * nor gives the garbage collector anything to scan or copy.
+ * <p>
+ * Tables larger than 1 GB are split over several buffers. The JVM caps the
+ * total size of direct buffers at the maximum heap size unless
+ * <code>-XX:MaxDirectMemorySize</code> is given, so large tables usually need
+ * that option.
+ * </p>
+ */
+public class OffHeapTranspositionTable extends TranspositionTable {
+    private static final int CHUNK_BITS = 26; /* 2^26 entries of 16 bytes = 1 GB */
+    private final ByteBuffer chunks[];
+
+    /**
+     * Constructs a table of at most <code>megabytes</code> megabytes.
+     */
+    public OffHeapTranspositionTable(long megabytes, Replacement replacement) {
+        super(entriesFor(megabytes), replacement);
+        long entries = getCapacity();
+        int chunkEntries = (int) Math.min(entries, 1L << CHUNK_BITS);
+        chunks = new ByteBuffer[(int) (entries / chunkEntries)];
+        for (int i = 0; i < chunks.length; i++)
+            chunks[i] = ByteBuffer.allocateDirect(16 * chunkEntries).order(ByteOrder.nativeOrder());
+    }
+
+    protected long readKey(long slot) {
+        return chunks[(int) (slot >>> CHUNK_BITS)].getLong(offset(slot));
+    }
+
+    protected long readData(long slot) {
+        return chunks[(int) (slot >>> CHUNK_BITS)].getLong(offset(slot) + 8);
+    }
+
+    protected void write(long slot, long key, long data) {
+        ByteBuffer chunk = chunks[(int) (slot >>> CHUNK_BITS)];
+        int offset = offset(slot);
+        chunk.putLong(offset, key);
+        chunk.putLong(offset + 8, data);
+    }
+
+    private static int offset(long slot) {
+        return (int) (slot & ((1L << CHUNK_BITS) - 1)) << 4;
+    }
+
+    public void clear() {
+        for (ByteBuffer chunk : chunks)
+            for (int i = 0; i < chunk.capacity(); i += 8)
+                chunk.putLong(i, 0);
+    }
+}
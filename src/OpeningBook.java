@@ -0,0 +1,220 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A read-only opening book. The book is a binary file of move scores keyed by
+ * position, which is memory-mapped rather than read: it stays out of the Java
+ * heap, the operating system pages in only the parts that are used, and every
+ * player in the JVM shares the one mapping returned by {@link #getDefault()}.
+ * <p>
+ * The file starts with a 16-byte header (the magic number and the number of
+ * records), followed by 16-byte records sorted by key and then by move. Each
+ * record holds the key of a position (see {@link #key(long, long)}), a move
+ * from that position and the score of the move for the player making it, so
+ * a position is looked up with a binary search. Symmetric positions share one
+ * key, and moves are stored in the orientation of the canonical form (see
+ * {@link BitBoard#canonicalSymmetry(long, long)}), so the book holds each
+ * opening only once and maps its moves onto whichever orientation is played.
+ * All numbers are big-endian.
+ * </p>
+ */
+public class OpeningBook {
+    /**
+     * The first eight bytes of a book file: "OTHBOOK1".
+     */
+    static final long MAGIC = 0x4f5448424f4f4b31L;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16;
+
+    /**
+     * Returned by {@link #bestMove(long, long)} for positions not in the book.
+     */
+    public static final int NO_MOVE = -1;
+
+    private static String defaultPath = null;
+    private static OpeningBook defaultBook = null;
+    private static boolean defaultOpened = false;
+
+    private final MappedByteBuffer buffer;
+    private final int records;
+
+    /**
+     * Maps a book file into memory.
+     *
+     * @throws IOException if the file cannot be read or is not a book.
+     */
+    public OpeningBook(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large for an opening book!");
+            /* the mapping stays valid after the channel is closed */
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        finally {
+            raf.close();
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != MAGIC)
+            throw new IOException(file + " is not an opening book!");
+        long count = buffer.getLong(8);
+        if (count < 0 || HEADER_BYTES + count * RECORD_BYTES != buffer.capacity())
+            throw new IOException(file + " is truncated or corrupt!");
+        records = (int) count;
+    }
+
+    /**
+     * Sets the file of the book returned by {@link #getDefault()}, or
+     * <code>null</code> (the default) for no book.
+     */
+    public static synchronized void setDefaultPath(String path) {
+        defaultPath = path;
+        defaultBook = null;
+        defaultOpened = false;
+    }
+
+    /**
+     * Returns the file of the book returned by {@link #getDefault()}.
+     */
+    public static synchronized String getDefaultPath() {
+        return defaultPath;
+    }
+
+    /**
+     * Returns the book shared by all players, mapping it on first use, or
+     * <code>null</code> if no book is set or it cannot be opened.
+     */
+    public static synchronized OpeningBook getDefault() {
+        if (!defaultOpened && defaultPath != null) {
+            defaultOpened = true;
+            try {
+                defaultBook = new OpeningBook(new File(defaultPath));
+            }
+            catch (IOException ioe) {
+                System.err.println("Warning: cannot open the opening book: " + ioe.getMessage());
+            }
+        }
+        return defaultBook;
+    }
+
+    /**
+     * Returns the number of records (position and move pairs) in the book.
+     */
+    public int getSize() {
+        return records;
+    }
+
+    /**
+     * Returns the book key of the position in which the player to move owns
+     * <code>own</code> and the other player owns <code>opp</code>: a hash of
+     * its canonical form, so that all symmetric positions share it. Books are
+     * files, so this must never change.
+     */
+    static long key(long own, long opp) {
+        int symmetry = BitBoard.canonicalSymmetry(own, opp);
+        long h = BitBoard.transform(own, symmetry) * 0x9e3779b97f4a7c15L
+                + Long.rotateLeft(BitBoard.transform(opp, symmetry), 32);
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns the best book move (as a square index) for the player to move,
+     * or {@link #NO_MOVE} if the position is not in the book. Only legal
+     * moves are returned, so that a collision of keys cannot make a player
+     * forfeit.
+     */
+    public int bestMove(long own, long opp) {
+        long key = key(own, opp);
+        int lo = 0;
+        int hi = records;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buffer.getLong(offset(mid)) < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        int symmetry = BitBoard.canonicalSymmetry(own, opp);
+        long legal = BitBoard.legalMoves(own, opp);
+        int best = NO_MOVE;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = lo; i < records && buffer.getLong(offset(i)) == key; i++) {
+            int offset = offset(i);
+            long square = BitBoard.inverseTransform(1L << buffer.getInt(offset + 8), symmetry);
+            int score = buffer.getInt(offset + 12);
+            if ((legal & square) != 0 && score > bestScore) {
+                best = Long.numberOfTrailingZeros(square);
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the best book move for the player to move in
+     * <code>state</code>, or <code>null</code> if it is not in the book.
+     */
+    public Square lookup(GameState state) {
+        GameState.Player player = state.getCurrentPlayer();
+        int move = bestMove(state.getDiscs(player), state.getDiscs(state.getOpponent(player)));
+        return (move == NO_MOVE ? null : Square.of(move));
+    }
+
+    /**
+     * Writes a book file holding the first <code>count</code> records
+     * (<code>keys[i]</code>, <code>moves[i]</code>, <code>scores[i]</code>),
+     * which need not be sorted. Moves must be in the orientation of the
+     * canonical form of their position. The file is written under a temporary
+     * name and then renamed, so that a book being played from is never seen
+     * half written.
+     */
+    static void write(File file, final long keys[], final int moves[], int scores[], int count)
+            throws IOException {
+        Integer order[] = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = Long.compare(keys[a], keys[b]);
+                return (c != 0 ? c : moves[a] - moves[b]);
+            }
+        });
+
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                temporary)));
+        try {
+            out.writeLong(MAGIC);
+            out.writeLong(count);
+            for (int i : order) {
+                out.writeLong(keys[i]);
+                out.writeInt(moves[i]);
+                out.writeInt(scores[i]);
+            }
+        }
+        finally {
+            out.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int offset(int record) {
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+}
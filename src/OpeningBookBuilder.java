@@ -0,0 +1,438 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A command-line tool that builds an {@link OpeningBook}. It expands every
+ * line of play from the initial position to a given number of plies, merging
+ * positions that are equal up to symmetry, scores the positions at the last
+ * ply with a fixed-depth principal variation search on all processors, and
+ * negamaxes the scores back up to the root. Every move of every position
+ * before the last ply is written to the book with its negamax score. The
+ * leaves are evaluated with the pattern weights given to
+ * {@link #setWeights(File)}, or else with the heuristic of the
+ * {@link SearchOthelloPlayer}s.
+ * <p>
+ * The score of each leaf is appended to a checkpoint file as soon as it is
+ * known. If the build is interrupted, running it again with the same settings
+ * skips the leaves in the checkpoint; the checkpoint records the settings,
+ * including a checksum of the weights, so that a build is never resumed
+ * with different ones. Every leaf is searched with a cleared transposition
+ * table and fresh move ordering, so the book does not depend on the number
+ * of threads or on where the build was resumed.
+ * </p>
+ */
+public class OpeningBookBuilder {
+    /**
+     * The first eight bytes of a checkpoint file: "OTHCKPT2".
+     */
+    private static final long CHECKPOINT_MAGIC = 0x4f5448434b505432L;
+    private static final int CHECKPOINT_HEADER_BYTES = 24;
+    private static final int CHECKPOINT_RECORD_BYTES = 12;
+    private static final long PROGRESS_MILLIS = 10000;
+
+    private final int plies;
+    private final int depth;
+    private final int threads;
+    private final int tableMegabytes;
+    private PatternEvaluator evaluator = null;
+    /* the CRC-32 of the weights file, or zero without one */
+    private long weightsChecksum = 0;
+    private final HashMap<Long, Position> positions = new HashMap<Long, Position>();
+    private final ArrayList<Position> leaves = new ArrayList<Position>();
+
+    /**
+     * A position in the opening tree, in canonical form.
+     */
+    private static class Position {
+        final long own;
+        final long opp;
+        final long key;
+        /* the legal moves in ascending order, or none for a pass */
+        int moves[];
+        /* the position after each move, or after the pass; null for leaves */
+        Position children[];
+        int score;
+        boolean scored;
+
+        Position(long own, long opp, long key) {
+            this.own = own;
+            this.opp = opp;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Constructs a builder.
+     *
+     * @param plies the number of plies of the book
+     * @param depth the depth to which the positions after the last ply are
+     *            searched
+     * @param threads the number of positions to search at once
+     * @param tableMegabytes the size of each thread's transposition table
+     */
+    public OpeningBookBuilder(int plies, int depth, int threads, int tableMegabytes) {
+        if (plies < 1 || depth < 1 || threads < 1)
+            throw new IllegalArgumentException("The plies, depth and threads must be positive!");
+        this.plies = plies;
+        this.depth = depth;
+        this.threads = threads;
+        this.tableMegabytes = tableMegabytes;
+    }
+
+    /**
+     * Makes the leaves be evaluated with the pattern weights in
+     * <code>weights</code> instead of the built-in heuristic.
+     *
+     * @throws IOException if the file cannot be read or does not hold
+     *             pattern weights.
+     */
+    public void setWeights(File weights) throws IOException {
+        evaluator = new PatternEvaluator(weights);
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(weights.toPath()));
+        /* never zero, which stands for no weights */
+        weightsChecksum = crc.getValue() | (1L << 32);
+    }
+
+    /**
+     * Builds the book and writes it to <code>book</code>, resuming from
+     * <code>checkpoint</code> if it exists.
+     */
+    public void build(File book, File checkpoint) throws IOException, InterruptedException,
+            ExecutionException {
+        GameState start = new GameState();
+        GameState.Player player = start.getCurrentPlayer();
+        Position root = expand(start.getDiscs(player), start.getDiscs(start.getOpponent(player)),
+                0);
+        System.out.println("Expanded " + positions.size() + " distinct positions, "
+                + leaves.size() + " of them at ply " + plies);
+
+        evaluate(checkpoint);
+        System.out.println("Score of the initial position: " + negamax(root));
+
+        int records = 0;
+        for (Position p : positions.values())
+            if (p.children != null)
+                records += p.moves.length;
+        long keys[] = new long[records];
+        int moves[] = new int[records];
+        int scores[] = new int[records];
+        int r = 0;
+        for (Position p : positions.values()) {
+            if (p.children == null)
+                continue;
+            for (int i = 0; i < p.moves.length; i++) {
+                keys[r] = p.key;
+                moves[r] = p.moves[i];
+                scores[r] = -p.children[i].score;
+                r++;
+            }
+        }
+        OpeningBook.write(book, keys, moves, scores, records);
+        System.out.println("Wrote " + records + " moves to " + book);
+    }
+
+    /**
+     * Returns the position in which the player to move owns <code>own</code>
+     * and the other player owns <code>opp</code>, creating it and the tree
+     * below it if no symmetric position has been seen yet.
+     */
+    private Position expand(long own, long opp, int ply) {
+        long key = OpeningBook.key(own, opp);
+        Position p = positions.get(key);
+        if (p != null)
+            return p;
+        int symmetry = BitBoard.canonicalSymmetry(own, opp);
+        p = new Position(BitBoard.transform(own, symmetry), BitBoard.transform(opp, symmetry), key);
+        positions.put(key, p);
+
+        long legal = BitBoard.legalMoves(p.own, p.opp);
+        if (legal == 0 && BitBoard.legalMoves(p.opp, p.own) == 0) {
+            p.score = SearchOthelloPlayer.finalScore(new SearchBoard(p.own, p.opp));
+            p.scored = true;
+        }
+        else if (ply == plies)
+            leaves.add(p);
+        else if (legal == 0) {
+            p.moves = new int[0];
+            p.children = new Position[] { expand(p.opp, p.own, ply + 1) };
+        }
+        else {
+            p.moves = new int[Long.bitCount(legal)];
+            p.children = new Position[p.moves.length];
+            for (int i = 0; legal != 0; legal &= legal - 1, i++) {
+                int x = Long.numberOfTrailingZeros(legal);
+                long flips = BitBoard.flips(x, p.own, p.opp);
+                p.moves[i] = x;
+                p.children[i] = expand(p.opp & ~flips, p.own | flips | (1L << x), ply + 1);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Scores the leaves that are not in the checkpoint in parallel, appending
+     * each score to the checkpoint as it arrives.
+     */
+    private void evaluate(File checkpoint) throws IOException, InterruptedException,
+            ExecutionException {
+        HashMap<Long, Integer> saved = readCheckpoint(checkpoint);
+        ArrayList<Position> pending = new ArrayList<Position>();
+        for (Position p : leaves) {
+            Integer score = saved.get(p.key);
+            if (score == null)
+                pending.add(p);
+            else {
+                p.score = score;
+                p.scored = true;
+            }
+        }
+        System.out.println("Searching " + pending.size() + " leaves to depth " + depth + " with "
+                + threads + " threads (" + (leaves.size() - pending.size())
+                + " already in the checkpoint)");
+        if (pending.isEmpty())
+            return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+            protected TranspositionTable initialValue() {
+                return TranspositionTable.create(tableMegabytes, false);
+            }
+        };
+        CompletionService<Position> completion = new ExecutorCompletionService<Position>(pool);
+        for (final Position p : pending) {
+            completion.submit(new Callable<Position>() {
+                public Position call() {
+                    p.score = search(p.own, p.opp, tables.get());
+                    return p;
+                }
+            });
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                checkpoint, true)));
+        try {
+            long started = System.currentTimeMillis();
+            long reported = started;
+            for (int done = 1; done <= pending.size(); done++) {
+                Position p = completion.take().get();
+                p.scored = true;
+                out.writeLong(p.key);
+                out.writeInt(p.score);
+                out.flush();
+                long now = System.currentTimeMillis();
+                if (now - reported >= PROGRESS_MILLIS || done == pending.size()) {
+                    reported = now;
+                    System.out.println("Searched " + done + "/" + pending.size() + " leaves in "
+                            + (now - started) / 1000 + " s");
+                }
+            }
+        }
+        finally {
+            out.close();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the score of a leaf for the player to move, searched to the
+     * full depth by iterative deepening.
+     */
+    private int search(long own, long opp, TranspositionTable table) {
+        if (BitBoard.legalMoves(own, opp) == 0)
+            /* a pass; the game is not over, or the leaf would have been scored */
+            return -search(opp, own, table);
+        table.clear();
+        PVSOthelloPlayer player = new PVSOthelloPlayer("Book builder", depth, table);
+        player.setEvaluator(evaluator);
+        NegaScoutSearch search = new NegaScoutSearch(player, table);
+        search.start(new SearchBoard(own, opp), new TimeManager(TimeManager.UNLIMITED));
+        int score = 0;
+        for (int d = 1; d <= depth; d++)
+            score = search.search(d, -SearchOthelloPlayer.INFINITY, SearchOthelloPlayer.INFINITY,
+                    0);
+        return score;
+    }
+
+    /**
+     * Returns the negamax score of <code>p</code> for the player to move.
+     */
+    private static int negamax(Position p) {
+        if (!p.scored) {
+            if (p.moves.length == 0)
+                p.score = -negamax(p.children[0]);
+            else {
+                p.score = -SearchOthelloPlayer.INFINITY;
+                for (Position child : p.children)
+                    p.score = Math.max(p.score, -negamax(child));
+            }
+            p.scored = true;
+        }
+        return p.score;
+    }
+
+    /**
+     * Returns the leaf scores saved in <code>checkpoint</code>, creating the
+     * file if it does not exist. A record cut short by an interruption is
+     * dropped from the end of the file.
+     *
+     * @throws IOException if the checkpoint was made with other settings.
+     */
+    private HashMap<Long, Integer> readCheckpoint(File checkpoint) throws IOException {
+        HashMap<Long, Integer> saved = new HashMap<Long, Integer>();
+        if (!checkpoint.exists() || checkpoint.length() < CHECKPOINT_HEADER_BYTES) {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(checkpoint));
+            try {
+                out.writeLong(CHECKPOINT_MAGIC);
+                out.writeInt(plies);
+                out.writeInt(depth);
+                out.writeLong(weightsChecksum);
+            }
+            finally {
+                out.close();
+            }
+            return saved;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                checkpoint)));
+        long records = (checkpoint.length() - CHECKPOINT_HEADER_BYTES) / CHECKPOINT_RECORD_BYTES;
+        try {
+            if (in.readLong() != CHECKPOINT_MAGIC)
+                throw new IOException(checkpoint + " is not a checkpoint!");
+            int savedPlies = in.readInt();
+            int savedDepth = in.readInt();
+            long savedChecksum = in.readLong();
+            if (savedPlies != plies || savedDepth != depth)
+                throw new IOException(checkpoint + " was made with " + savedPlies
+                        + " plies and depth " + savedDepth + "; delete it to start over");
+            if (savedChecksum != weightsChecksum)
+                throw new IOException(checkpoint + " was made with "
+                        + (savedChecksum == 0 ? "the built-in evaluation"
+                                : (weightsChecksum == 0 ? "pattern weights" : "other weights"))
+                        + "; delete it to start over");
+            for (long i = 0; i < records; i++)
+                saved.put(in.readLong(), in.readInt());
+        }
+        catch (EOFException eofe) {
+            throw new IOException(checkpoint + " is truncated!");
+        }
+        finally {
+            in.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(checkpoint, "rw");
+        try {
+            raf.setLength(CHECKPOINT_HEADER_BYTES + records * CHECKPOINT_RECORD_BYTES);
+        }
+        finally {
+            raf.close();
+        }
+        return saved;
+    }
+
+    /**
+     * Builds a book from the command line.
+     */
+    public static void main(String[] args) {
+        int plies = 8;
+        int depth = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tableMegabytes = 16;
+        String book = null;
+        String checkpoint = null;
+        String weights = null;
+        boolean printUse = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("-") && book == null)
+                    book = args[i];
+                else if (i == args.length - 1) {
+                    System.err.println("Warning: unexpected argument \"" + args[i] + "\"!");
+                    printUse = true;
+                }
+                else if (args[i].equals("-p"))
+                    plies = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-d"))
+                    depth = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-j"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-t"))
+                    tableMegabytes = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-c"))
+                    checkpoint = args[++i];
+                else if (args[i].equals("-w"))
+                    weights = args[++i];
+                else {
+                    System.err.println("Warning: unexpected argument \"" + args[i] + "\"!");
+                    printUse = true;
+                }
+            }
+        }
+        catch (NumberFormatException nfe) {
+            System.err.println("Error: " + nfe.getMessage());
+            printUse = true;
+        }
+        if (book == null)
+            printUse = true;
+        if (printUse) {
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            OpeningBookBuilder builder = new OpeningBookBuilder(plies, depth, threads,
+                    tableMegabytes);
+            if (weights != null)
+                builder.setWeights(new File(weights));
+            builder.build(new File(book), new File(checkpoint == null ? book + ".checkpoint"
+                    : checkpoint));
+        }
+        catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints command line usage information.
+     */
+    public static void printUsage() {
+        System.err.println(Othello.getVersionInfo());
+        System.err.println("Usage: OpeningBookBuilder [options] bookfile");
+        System.err.println();
+        System.err.println("OPTIONS:");
+        System.err.println("         -p  number The number of plies of the book (8 by default).");
+        System.err.println("         -d  number The depth to which the positions after the last ply");
+        System.err.println("                    are searched (10 by default).");
+        System.err.println("         -j  number The number of positions searched at once");
+        System.err.println("                    (the number of processors by default).");
+        System.err.println("         -w  file   Evaluates the positions with the pattern weights in this");
+        System.err.println("                    file (the agents' built-in evaluation by default).");
+        System.err.println("         -t  number The size (in megabytes) of each thread's");
+        System.err.println("                    transposition table (16 by default).");
+        System.err.println("         -c  file   The checkpoint file (bookfile.checkpoint by default).");
+        System.err.println("                    An interrupted build resumes from it.");
+    }
+}
@@ -20,6 +20,7 @@ public class Othello {
     private GameState state;
     private UserInterface ui;
     private int turnDuration;
+    private int historyLimit;
     private boolean verbose;
 
     /**
@@ -54,6 +55,7 @@ public class Othello {
         p1timeUsed = 0;
         p2timeUsed = 0;
         turnDuration = 5;
+        historyLimit = -1;
         this.ui = ui;
         if (useSeed)
             this.state = new GameState(seed);
@@ -67,6 +69,15 @@ public class Othello {
         verbose = verbosity;
     }
 
+    /**
+     * Limits the number of previous states that are kept in the game history
+     * (reachable through {@link GameState#getPreviousState()}). A negative
+     * value, the default, keeps the entire history.
+     */
+    public void setHistoryLimit(int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
     /**
      * Attempts to instantiate a new {@link OthelloPlayer} with the given
      * <code>playerName</code> from the given class.
@@ -224,7 +235,12 @@ public class Othello {
                     }
                 }
                 try {
+                    GameState previous = state;
                     state = state.applyMove(move);
+                    /* the players' search trees hang off of the previous state */
+                    previous.clearCaches();
+                    if (historyLimit >= 0)
+                        state.pruneHistory(historyLimit);
                 }
                 catch (InvalidMoveException ime) {
                     log(ime);
@@ -296,6 +312,9 @@ public class Othello {
         long seed = 0;
         boolean seedSet = false;
         int turnDuration = -1;
+        int tableMegabytes = 16;
+        int historyLimit = -1;
+        boolean offHeapTables = false;
 
         for (int i = 0; i < args.length; i++) {
             if (!args[i].startsWith("-")) {
@@ -336,6 +355,140 @@ public class Othello {
                     turnDuration = Integer.parseInt(args[++i]);
                 }
             }
+            else if (args[i].equals("-c")) {
+                /**
+                 * Set the cache retention policy of the game states
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -c requires an argument (none, soft, bounded or unbounded)");
+                    printUse = true;
+                }
+                else {
+                    try {
+                        GameState.setCacheRetention(GameState.CacheRetention.valueOf(args[++i]
+                                .toUpperCase()));
+                    }
+                    catch (IllegalArgumentException iae) {
+                        System.err.println("Error: unknown cache retention policy \"" + args[i]
+                                + "\"!");
+                        printUse = true;
+                    }
+                }
+            }
+            else if (args[i].equals("-history")) {
+                /**
+                 * Limit the number of previous states kept in the game history
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -history requires an argument (the number of previous states)");
+                    printUse = true;
+                }
+                else {
+                    historyLimit = Integer.parseInt(args[++i]);
+                }
+            }
+            else if (args[i].equals("-t")) {
+                /**
+                 * Set the size of the players' transposition tables
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -t requires an argument (the table size in megabytes)");
+                    printUse = true;
+                }
+                else {
+                    tableMegabytes = Integer.parseInt(args[++i]);
+                }
+            }
+            else if (args[i].equals("-j")) {
+                /**
+                 * Set the number of threads of the multi-threaded players
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -j requires an argument (the number of search threads)");
+                    printUse = true;
+                }
+                else {
+                    try {
+                        LazySMPOthelloPlayer.setDefaultThreads(Integer.parseInt(args[++i]));
+                    }
+                    catch (IllegalArgumentException iae) {
+                        System.err.println("Error: " + iae.getMessage());
+                        printUse = true;
+                    }
+                }
+            }
+            else if (args[i].equals("-e")) {
+                /**
+                 * Set the number of empty squares at which agents solve the endgame
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -e requires an argument (the number of empty squares)");
+                    printUse = true;
+                }
+                else {
+                    try {
+                        EndgameSolver.setDefaultEmpties(Integer.parseInt(args[++i]));
+                    }
+                    catch (IllegalArgumentException iae) {
+                        System.err.println("Error: " + iae.getMessage());
+                        printUse = true;
+                    }
+                }
+            }
+            else if (args[i].equals("-w")) {
+                /**
+                 * Set the number of empty squares at which agents try to prove a win
+                 */
+                if (i == args.length - 1) {
+                    System.err
+                            .println("Error: -w requires an argument (the number of empty squares)");
+                    printUse = true;
+                }
+                else {
+                    try {
+                        EndgameSolver.setDefaultWLDEmpties(Integer.parseInt(args[++i]));
+                    }
+                    catch (IllegalArgumentException iae) {
+                        System.err.println("Error: " + iae.getMessage());
+                        printUse = true;
+                    }
+                }
+            }
+            else if (args[i].equals("-b")) {
+                /**
+                 * Set the opening book of the agents
+                 */
+                if (i == args.length - 1) {
+                    System.err.println("Error: -b requires an argument (the opening book file)");
+                    printUse = true;
+                }
+                else {
+                    OpeningBook.setDefaultPath(args[++i]);
+                }
+            }
+            else if (args[i].equals("-p")) {
+                /**
+                 * Set the pattern weights the agents evaluate positions with
+                 */
+                if (i == args.length - 1) {
+                    System.err.println("Error: -p requires an argument (the pattern weights file)");
+                    printUse = true;
+                }
+                else {
+                    PatternEvaluator.setDefaultPath(args[++i]);
+                }
+            }
+            else if (args[i].equals("-offheap")) {
+                offHeapTables = true;
+            }
+            else if (args[i].equals("-speedup")) {
+                YBWCOthelloPlayer.setDefaultMeasureSpeedup(true);
+            }
             else if (args[i].equals("-nw")) {
                 ui = new ConsoleUserInterface();
             }
@@ -348,6 +501,14 @@ public class Othello {
         if (ui == null)
             ui = new GraphicalUserInterface();
 
+        try {
+            TranspositionTable.setDefaults(tableMegabytes, offHeapTables);
+        }
+        catch (IllegalArgumentException iae) {
+            System.err.println("Error: " + iae.getMessage());
+            printUse = true;
+        }
+
         OthelloPlayer players[];
 
         if (sargs < 2) {
@@ -411,6 +572,7 @@ public class Othello {
         else
             othello = new Othello(players[0], players[1], ui);
         othello.turnDuration = turnDuration;
+        othello.setHistoryLimit(historyLimit);
         if (ui instanceof Logger)
             ((Logger) ui).log(getVersionInfo(), null);
         else
@@ -429,6 +591,21 @@ public class Othello {
                 othello.log("    Evaluations: " + mm.getStaticEvaluations());
                 othello.log("  Ave Branching: " + mm.getAveBranchingFactor());
                 othello.log("  Eff Branching: " + mm.getEffectiveBranchingFactor());
+                if (op instanceof SearchOthelloPlayer)
+                    othello.log("   Solver Nodes: " + ((SearchOthelloPlayer) op).getSolverNodes());
+                if (op instanceof YBWCOthelloPlayer
+                        && ((YBWCOthelloPlayer) op).isMeasuringSpeedup()) {
+                    YBWCOthelloPlayer ybwc = (YBWCOthelloPlayer) op;
+                    othello.log("        Speedup: " + ybwc.getSpeedup());
+                    othello.log("Search Overhead: " + ybwc.getSearchOverhead());
+                }
+            }
+            else if (op instanceof ProofNumberOthelloPlayer) {
+                ProofNumberOthelloPlayer pns = (ProofNumberOthelloPlayer) op;
+                othello.log(op.getName() + " Stats:");
+                othello.log("  Nodes Created: " + pns.getNodesCreated());
+                othello.log("    df-pn Nodes: " + pns.getDfpnNodes());
+                othello.log("    Peak Memory: " + pns.getPeakMemory());
             }
         }
     }
@@ -458,6 +635,27 @@ public class Othello {
         System.err.println("         -s  number Seed for the simulator's random number generator.");
         System.err.println("                    If omitted, time since the epoch is used.");
         System.err.println("         -nw        Run in console mode (a GUI is used by default)");
+        System.err.println("         -t  number Sets the size (in megabytes) of each agent's transposition");
+        System.err.println("                    table (16 by default).");
+        System.err.println("         -offheap   Allocates the transposition tables outside of the Java heap.");
+        System.err.println("                    Large tables may need -XX:MaxDirectMemorySize.");
+        System.err.println("         -j  number Sets the number of threads of each multi-threaded agent");
+        System.err.println("                    (the number of processors by default).");
+        System.err.println("         -speedup   Parallel alpha-beta agents repeat each search serially and");
+        System.err.println("                    report their speedup (without -d only, as this doubles");
+        System.err.println("                    their time per move).");
+        System.err.println("         -e  number Agents solve the game exactly once this many squares are");
+        System.err.println("                    empty (14 by default).");
+        System.err.println("         -w  number Agents try to prove a win once this many squares are");
+        System.err.println("                    empty, and then keep it (20 by default).");
+        System.err.println("         -b  file   Agents play from this opening book while they can.");
+        System.err.println("         -p  file   Agents evaluate positions with the pattern weights in this");
+        System.err.println("                    file (built-in weights are used if it cannot be read).");
+        System.err.println("         -c  policy Sets how long game states cache their successors:");
+        System.err.println("                    none, soft (the default), bounded or unbounded.");
+        System.err.println("         -history number");
+        System.err.println("                    Keeps only this many previous states in the game history");
+        System.err.println("                    (all of them by default).");
         System.err
                 .println("         -d  number Sets the amount of time (in seconds) an agent has to make");
         System.err.println("                    its decision each turn (i.e. the deadline).");
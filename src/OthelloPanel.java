@@ -17,7 +17,7 @@ class OthelloPanel extends JPanel implements MouseListener, MouseMotionListener
 
     public OthelloPanel(GameState initialState, OthelloPlayer player1, OthelloPlayer player2) {
         state = initialState;
-        highlight = new Square(0, 0);
+        highlight = Square.of(0, 0);
         mousePresent = false;
         this.player1 = player1;
         this.player2 = player2;
@@ -90,7 +90,7 @@ class OthelloPanel extends JPanel implements MouseListener, MouseMotionListener
 
             for (row = 0; row <= 7; row++) {
                 for (col = 0; col <= 7; col++) {
-                    if (state.isLegalMove(new Square(row, col), state.getCurrentPlayer())) {
+                    if (state.isLegalMove(Square.of(row, col), state.getCurrentPlayer())) {
                         g
                                 .setColor((state.getCurrentPlayer() == GameState.Player.PLAYER1 ? Color.BLUE
                                         : Color.GREEN));
@@ -138,17 +138,13 @@ class OthelloPanel extends JPanel implements MouseListener, MouseMotionListener
     Square last_coords;
 
     public void mouseMoved(MouseEvent e) {
-        if (last_coords == null)
-            last_coords = new Square(0, 0);
-
         highlight = mouseCoordsToRowCol(e);
         mousePresent = true;
 
-        if (last_coords.row != highlight.row || last_coords.col != highlight.col)
+        if (last_coords != highlight)
             repaint();
 
-        last_coords.row = highlight.row;
-        last_coords.col = highlight.col;
+        last_coords = highlight;
     }
 
     public void mouseDragged(MouseEvent e) {
@@ -202,6 +198,9 @@ class OthelloPanel extends JPanel implements MouseListener, MouseMotionListener
         int square_width = (width - 7) / 8;
         int square_height = (height - 7) / 8;
 
-        return new Square(y / (square_height + 1), x / (square_width + 1));
+        /* events just outside the board (e.g. while dragging) map to its edge */
+        int row = Math.max(0, Math.min(y / (square_height + 1), 7));
+        int col = Math.max(0, Math.min(x / (square_width + 1), 7));
+        return Square.of(row, col);
     }
 }
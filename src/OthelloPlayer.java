@@ -31,6 +31,8 @@ public abstract class OthelloPlayer {
     private Logger logger;
     private Date currentDeadline;
     private boolean verbose;
+    private Evaluator evaluator;
+    private boolean evaluatorSet;
 
     /**
      * Creates a new Othello Player
@@ -40,6 +42,8 @@ public abstract class OthelloPlayer {
         logger = null;
         currentDeadline = null;
         verbose = true;
+        evaluator = null;
+        evaluatorSet = false;
     }
 
     public void setVerbosity(boolean verbose) {
@@ -82,6 +86,65 @@ public abstract class OthelloPlayer {
             return currentDeadline.getTime() - (new Date()).getTime();
     }
 
+    /**
+     * Returns the move the shared opening book (see
+     * {@link OpeningBook#getDefault()}) gives for <code>currentState</code>,
+     * or <code>null</code> if there is no book or the position is not in it.
+     * Searching players call this before they search.
+     */
+    protected Square getBookMove(GameState currentState) {
+        OpeningBook book = OpeningBook.getDefault();
+        if (book == null)
+            return null;
+        Square move = book.lookup(currentState);
+        if (move != null)
+            log("Playing " + move + " from the opening book");
+        return move;
+    }
+
+    /**
+     * Sets the {@link Evaluator} that this player's static evaluation
+     * delegates to, or <code>null</code> for the player's own evaluation (see
+     * {@link #heuristic(GameState)}). Players that do not evaluate positions
+     * ignore it.
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+        evaluatorSet = true;
+    }
+
+    /**
+     * Returns the evaluator set with {@link #setEvaluator(Evaluator)} or, if
+     * none was, the current {@link PatternEvaluator#getDefault()}; or
+     * <code>null</code> if the player uses its own evaluation.
+     */
+    public Evaluator getEvaluator() {
+        return (evaluatorSet ? evaluator : PatternEvaluator.getDefault());
+    }
+
+    /**
+     * Returns the value of the position in <code>state</code> for the player
+     * to move: that of the {@link #getEvaluator() evaluator}, or of
+     * {@link #heuristic(GameState)} if there is none.
+     */
+    protected int evaluate(GameState state) {
+        Evaluator evaluator = getEvaluator();
+        if (evaluator == null)
+            return heuristic(state);
+        GameState.Player player = state.getCurrentPlayer();
+        return evaluator.evaluate(state.getDiscs(player), state.getDiscs(state.getOpponent(player)));
+    }
+
+    /**
+     * Returns this player's own value of the position in <code>state</code>
+     * for the player to move, used when it has no evaluator. This is the disc
+     * difference unless overridden.
+     */
+    protected int heuristic(GameState state) {
+        GameState.Player player = state.getCurrentPlayer();
+        return state.getScore(player) - state.getScore(state.getOpponent(player));
+    }
+
     /**
      * Sends a log message to the user interface.
      */
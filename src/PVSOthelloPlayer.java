@@ -0,0 +1,93 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * A player that chooses moves by principal variation search (see
+ * {@link NegaScoutSearch}) inside iterative deepening, with aspiration
+ * windows: from the third iteration on, the root is searched with a narrow
+ * window around the score of the previous iteration. If the score falls
+ * outside the window the window is widened on that side and the root is
+ * searched again; the number of such re-searches is reported with the other
+ * statistics.
+ */
+public class PVSOthelloPlayer extends SearchOthelloPlayer {
+    /**
+     * Half the width of the first aspiration window.
+     */
+    public static final int ASPIRATION_WINDOW = 40;
+
+    private final NegaScoutSearch search;
+    private int researches = 0;
+
+    /**
+     * Constructs a player that searches as deep as its time allows.
+     *
+     * @param name the name of the player
+     */
+    public PVSOthelloPlayer(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructs a player that searches at most <code>depthLimit</code> plies
+     * deep, or as deep as its time allows if it is <code>-1</code>.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     */
+    public PVSOthelloPlayer(String name, int depthLimit) {
+        this(name, depthLimit, TranspositionTable.create());
+    }
+
+    /**
+     * Constructs a player that uses the given transposition table.
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored
+     * @param table the transposition table to use, or null for none
+     */
+    public PVSOthelloPlayer(String name, int depthLimit, TranspositionTable table) {
+        super(name, depthLimit);
+        search = new NegaScoutSearch(this, table);
+    }
+
+    /**
+     * Returns the number of times the root had to be searched again because
+     * its score fell outside the aspiration window.
+     */
+    public int getResearches() {
+        return researches;
+    }
+
+    protected int searchIteration(SearchBoard board, int depth, int previousScore) {
+        search.start(board, time);
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        int delta = ASPIRATION_WINDOW;
+        if (depth > 2) {
+            alpha = previousScore - delta;
+            beta = previousScore + delta;
+        }
+
+        int score;
+        while (true) {
+            score = search.search(depth, alpha, beta, 0);
+            if (time.isAborted())
+                break;
+            if (score <= alpha && alpha > -INFINITY)
+                alpha = Math.max(-INFINITY, score - delta);
+            else if (score >= beta && beta < INFINITY)
+                beta = Math.min(INFINITY, score + delta);
+            else
+                break;
+            /* a proven win or loss is far outside any window; do not creep up to it */
+            delta = (Math.abs(score) >= WIN ? INFINITY : delta * 2);
+            researches++;
+        }
+        collectStatistics(search);
+        return score;
+    }
+
+    protected int getIterationMove() {
+        return search.getRootMove();
+    }
+}
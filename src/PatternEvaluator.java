@@ -0,0 +1,351 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * An evaluation function that sums weights of patterns: groups of squares,
+ * such as an edge with its two X-squares or the 3x3 block in a corner, whose
+ * contents are looked up as a whole. The contents of a pattern of
+ * <i>n</i> squares are read as an <i>n</i>-digit base-3 number (0 for an
+ * empty square, 1 for a disc of the player to move and 2 for a disc of the
+ * opponent) which indexes a <code>short[]</code> of weights. Each pattern is
+ * matched in every orientation in which it occurs on the board, 46 instances
+ * in all, so an evaluation costs 46 weight lookups plus the table lookups
+ * that convert the squares to base 3.
+ * <p>
+ * The weights of a pattern differ between the stages of the game, so there is
+ * a set of tables for each {@link #PHASES phase}, chosen by the number of
+ * discs on the board. Weights are normally trained offline and loaded from a
+ * file (see {@link #PatternEvaluator(File)}); without one, built-in weights
+ * derived from the classic square values are used.
+ * </p>
+ * <p>
+ * A weights file starts with a magic number and the number of phases and
+ * patterns, followed by the weights of every pattern of every phase, phase
+ * by phase and in the order of the pattern constants, as big-endian
+ * <code>short</code>s. Digit <i>i</i> of an index is the square listed
+ * <i>i</i>-th for the pattern in {@link #SQUARES}.
+ * </p>
+ */
+public class PatternEvaluator implements Evaluator {
+    /**
+     * The first eight bytes of a weights file: "OTHPAT01".
+     */
+    static final long MAGIC = 0x4f54485041543031L;
+
+    /**
+     * The number of sets of weights. Phase <i>p</i> is used when there are
+     * between <code>4 + 5p</code> and <code>8 + 5p</code> discs on the board.
+     */
+    public static final int PHASES = 13;
+    private static final int DISCS_PER_PHASE = 5;
+
+    public static final int EDGE_2X = 0;
+    public static final int CORNER_3X3 = 1;
+    public static final int CORNER_2X5 = 2;
+    public static final int LINE_2 = 3;
+    public static final int LINE_3 = 4;
+    public static final int LINE_4 = 5;
+    public static final int DIAGONAL_8 = 6;
+    public static final int DIAGONAL_7 = 7;
+    public static final int DIAGONAL_6 = 8;
+    public static final int DIAGONAL_5 = 9;
+    public static final int DIAGONAL_4 = 10;
+    public static final int PATTERNS = 11;
+
+    /**
+     * The squares of each pattern in the orientation in which it is indexed,
+     * lowest digit first. The other instances of a pattern are its images
+     * under the symmetries in {@link #INSTANCES}.
+     */
+    static final int SQUARES[][] = {
+            { 0, 1, 2, 3, 4, 5, 6, 7, 9, 14 }, /* a1-h1 with b2 and g2 */
+            { 0, 1, 2, 8, 9, 10, 16, 17, 18 },
+            { 0, 1, 2, 3, 4, 8, 9, 10, 11, 12 },
+            { 8, 9, 10, 11, 12, 13, 14, 15 },
+            { 16, 17, 18, 19, 20, 21, 22, 23 },
+            { 24, 25, 26, 27, 28, 29, 30, 31 },
+            { 0, 9, 18, 27, 36, 45, 54, 63 },
+            { 1, 10, 19, 28, 37, 46, 55 },
+            { 2, 11, 20, 29, 38, 47 },
+            { 3, 12, 21, 30, 39 },
+            { 4, 13, 22, 31 } };
+
+    /**
+     * The symmetries (see {@link GameState#transform(int)}) under which each
+     * pattern is matched; each gives a different set of squares.
+     */
+    static final int INSTANCES[][] = { { 0, 2, 4, 6 }, { 0, 1, 2, 3 },
+            { 0, 1, 2, 3, 4, 5, 6, 7 }, { 0, 2, 4, 6 }, { 0, 2, 4, 6 }, { 0, 2, 4, 6 }, { 0, 1 },
+            { 0, 1, 2, 4 }, { 0, 1, 2, 4 }, { 0, 1, 2, 4 }, { 0, 1, 2, 4 } };
+
+    /**
+     * <code>TERNARY[b]</code> is the binary number <code>b</code> read in
+     * base 3, so that a pattern whose squares hold the bits <code>o</code> of
+     * the player to move and <code>p</code> of the opponent has index
+     * <code>TERNARY[o] + 2 * TERNARY[p]</code>.
+     */
+    private static final int TERNARY[] = new int[1 << 10];
+
+    /**
+     * The value of each square for the built-in weights.
+     */
+    private static final int SQUARE_VALUES[] = {
+            100, -20, 10, 5, 5, 10, -20, 100,
+            -20, -50, -2, -2, -2, -2, -50, -20,
+            10, -2, 1, 1, 1, 1, -2, 10,
+            5, -2, 1, 0, 0, 1, -2, 5,
+            5, -2, 1, 0, 0, 1, -2, 5,
+            10, -2, 1, 1, 1, 1, -2, 10,
+            -20, -50, -2, -2, -2, -2, -50, -20,
+            100, -20, 10, 5, 5, 10, -20, 100 };
+
+    /**
+     * Multiplying a mask with at most one square in each column by this adds
+     * all of its rows into the top row without carries.
+     */
+    private static final long COLUMNS_TO_TOP = 0x0101010101010101L;
+    private static final long DIAGONALS[] = new long[PATTERNS];
+    private static final int LIMIT = Evaluator.WIN - 1;
+
+    private static String defaultPath = null;
+    private static volatile PatternEvaluator defaultEvaluator = null;
+    private static volatile boolean defaultLoaded = true;
+
+    static {
+        for (int b = 0; b < TERNARY.length; b++)
+            for (int i = 0, digit = 1; i < 10; i++, digit *= 3)
+                if ((b & (1 << i)) != 0)
+                    TERNARY[b] += digit;
+        for (int p = DIAGONAL_8; p <= DIAGONAL_4; p++)
+            for (int square : SQUARES[p])
+                DIAGONALS[p] |= 1L << square;
+    }
+
+    /* weights[phase][pattern][index] */
+    private final short weights[][][];
+
+    /**
+     * Constructs an evaluator with the built-in weights, which give each
+     * square its classic value (corners are good, the squares next to them
+     * bad) spread evenly over the patterns that contain it. They are the
+     * same in every phase.
+     */
+    public PatternEvaluator() {
+        int coverage[] = new int[64];
+        for (int p = 0; p < PATTERNS; p++)
+            for (int symmetry : INSTANCES[p])
+                for (int square : SQUARES[p])
+                    coverage[Long.numberOfTrailingZeros(BitBoard.inverseTransform(1L << square,
+                            symmetry))]++;
+
+        /* each instance containing a square gets an equal share of its value */
+        int share[] = new int[64];
+        for (int q = 0; q < 64; q++)
+            share[q] = (int) Math.round(Math.abs((double) SQUARE_VALUES[q] / coverage[q]))
+                    * Integer.signum(SQUARE_VALUES[q]);
+
+        short tables[][] = new short[PATTERNS][];
+        for (int p = 0; p < PATTERNS; p++) {
+            int squares[] = SQUARES[p];
+            tables[p] = new short[size(p)];
+            for (int index = 0; index < tables[p].length; index++) {
+                int w = 0;
+                for (int i = 0, digits = index; i < squares.length; i++, digits /= 3) {
+                    /* the square values are symmetric, so the canonical square will do */
+                    if (digits % 3 == 1)
+                        w += share[squares[i]];
+                    else if (digits % 3 == 2)
+                        w -= share[squares[i]];
+                }
+                tables[p][index] = (short) w;
+            }
+        }
+        weights = new short[PHASES][][];
+        for (int phase = 0; phase < PHASES; phase++)
+            weights[phase] = tables;
+    }
+
+    /**
+     * Constructs an evaluator with the weights in <code>file</code>.
+     *
+     * @throws IOException if the file cannot be read or does not hold
+     *             weights for these patterns.
+     */
+    public PatternEvaluator(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readLong() != MAGIC)
+                throw new IOException(file + " is not a pattern weights file!");
+            if (in.readInt() != PHASES || in.readInt() != PATTERNS)
+                throw new IOException(file + " holds weights for other patterns!");
+            weights = new short[PHASES][PATTERNS][];
+            for (int phase = 0; phase < PHASES; phase++) {
+                for (int p = 0; p < PATTERNS; p++) {
+                    short table[] = new short[size(p)];
+                    for (int i = 0; i < table.length; i++)
+                        table[i] = in.readShort();
+                    weights[phase][p] = table;
+                }
+            }
+        }
+        catch (EOFException eofe) {
+            throw new IOException(file + " is truncated!");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sets the weights file of the evaluator returned by
+     * {@link #getDefault()}, or <code>null</code> (the default) for none.
+     */
+    public static synchronized void setDefaultPath(String path) {
+        defaultLoaded = false;
+        defaultPath = path;
+        defaultEvaluator = null;
+    }
+
+    /**
+     * Returns the evaluator of players that have not been given one: one
+     * with the weights in the {@link #setDefaultPath(String) default file},
+     * loaded on first use, or with the built-in weights if that file cannot
+     * be read. Returns <code>null</code> if no file is set, in which case
+     * the players keep their own evaluation functions.
+     */
+    public static PatternEvaluator getDefault() {
+        /* players ask at every evaluation, so once loaded this takes no lock */
+        if (defaultLoaded)
+            return defaultEvaluator;
+        synchronized (PatternEvaluator.class) {
+            if (!defaultLoaded) {
+                if (defaultPath != null) {
+                    try {
+                        defaultEvaluator = new PatternEvaluator(new File(defaultPath));
+                    }
+                    catch (IOException ioe) {
+                        System.err.println("Warning: cannot load the pattern weights ("
+                                + ioe.getMessage() + "); using the built-in weights");
+                        defaultEvaluator = new PatternEvaluator();
+                    }
+                }
+                defaultLoaded = true;
+            }
+            return defaultEvaluator;
+        }
+    }
+
+    /**
+     * Returns the number of weights of pattern <code>p</code>: 3 to the
+     * power of its number of squares.
+     */
+    public static int size(int p) {
+        int size = 1;
+        for (int i = 0; i < SQUARES[p].length; i++)
+            size *= 3;
+        return size;
+    }
+
+    /**
+     * Returns the weight of pattern <code>p</code> with the given index in
+     * the given phase.
+     */
+    public int getWeight(int phase, int p, int index) {
+        return weights[phase][p][index];
+    }
+
+    /**
+     * Writes the weights of this evaluator to <code>file</code> in the format
+     * read by {@link #PatternEvaluator(File)}.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                file)));
+        try {
+            out.writeLong(MAGIC);
+            out.writeInt(PHASES);
+            out.writeInt(PATTERNS);
+            for (int phase = 0; phase < PHASES; phase++)
+                for (int p = 0; p < PATTERNS; p++)
+                    for (short w : weights[phase][p])
+                        out.writeShort(w);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public int evaluate(long own, long opp) {
+        short w[][] = weights[(Long.bitCount(own | opp) - 4) / DISCS_PER_PHASE];
+
+        /* match the patterns on the board in all eight orientations */
+        long ownT = BitBoard.flipDiagonal(own);
+        long oppT = BitBoard.flipDiagonal(opp);
+        long ownM = BitBoard.mirrorHorizontal(own);
+        long oppM = BitBoard.mirrorHorizontal(opp);
+        long ownTM = BitBoard.mirrorHorizontal(ownT);
+        long oppTM = BitBoard.mirrorHorizontal(oppT);
+        int score = orientation(w, own, opp, 0)
+                + orientation(w, ownM, oppM, 1)
+                + orientation(w, BitBoard.flipVertical(own), BitBoard.flipVertical(opp), 2)
+                + orientation(w, BitBoard.flipVertical(ownM), BitBoard.flipVertical(oppM), 3)
+                + orientation(w, ownT, oppT, 4)
+                + orientation(w, ownTM, oppTM, 5)
+                + orientation(w, BitBoard.flipVertical(ownT), BitBoard.flipVertical(oppT), 6)
+                + orientation(w, BitBoard.flipVertical(ownTM), BitBoard.flipVertical(oppTM), 7);
+        return Math.max(-LIMIT, Math.min(LIMIT, score));
+    }
+
+    /**
+     * Returns the sum of the weights of the pattern instances for symmetry
+     * <code>s</code>, given the board with that symmetry applied.
+     */
+    private static int orientation(short w[][], long a, long b, int s) {
+        int score = w[CORNER_2X5][index((int) (a & 0x1f) | (int) ((a >>> 3) & 0x3e0),
+                (int) (b & 0x1f) | (int) ((b >>> 3) & 0x3e0))];
+        if ((s & 1) == 0) {
+            /* the edges and lines along the top of the board */
+            score += w[EDGE_2X][index((int) (a & 0xff) | (int) ((a >>> 1) & 0x100)
+                    | (int) ((a >>> 5) & 0x200), (int) (b & 0xff) | (int) ((b >>> 1) & 0x100)
+                    | (int) ((b >>> 5) & 0x200))];
+            score += w[LINE_2][index((int) (a >>> 8) & 0xff, (int) (b >>> 8) & 0xff)];
+            score += w[LINE_3][index((int) (a >>> 16) & 0xff, (int) (b >>> 16) & 0xff)];
+            score += w[LINE_4][index((int) (a >>> 24) & 0xff, (int) (b >>> 24) & 0xff)];
+        }
+        if (s < 4)
+            /* the corner in the top left */
+            score += w[CORNER_3X3][index((int) (a & 7) | (int) ((a >>> 5) & 0x38)
+                    | (int) ((a >>> 10) & 0x1c0), (int) (b & 7) | (int) ((b >>> 5) & 0x38)
+                    | (int) ((b >>> 10) & 0x1c0))];
+        if (s <= 2 || s == 4) {
+            /* the diagonals on and above the a1-h8 diagonal */
+            if (s < 2)
+                score += w[DIAGONAL_8][index(diagonal(a, DIAGONAL_8), diagonal(b, DIAGONAL_8))];
+            for (int d = DIAGONAL_7; d <= DIAGONAL_4; d++)
+                score += w[d][index(diagonal(a, d), diagonal(b, d))];
+        }
+        return score;
+    }
+
+    private static int index(int own, int opp) {
+        return TERNARY[own] + 2 * TERNARY[opp];
+    }
+
+    /**
+     * Returns the squares of <code>mask</code> on diagonal pattern
+     * <code>d</code> as one bit per column, starting with the column of its
+     * square in the top row.
+     */
+    private static int diagonal(long mask, int d) {
+        return (int) (((mask & DIAGONALS[d]) * COLUMNS_TO_TOP) >>> (56 + d - DIAGONAL_8));
+    }
+}
@@ -0,0 +1,576 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+
+/**
+ * A player that proves endgame results with proof-number search. Starting
+ * from the current position it grows a best-first proof tree, always
+ * expanding the most-proving leaf, until the tree proves that the player to
+ * move wins (or, failing that, draws) or disproves it. Proof and disproof
+ * numbers are initialized from mobility, so positions with few replies are
+ * explored first.
+ * <p>
+ * The tree lives in a pool of primitive arrays of fixed size, so its memory
+ * is bounded and searching allocates nothing. Whenever a node is proven or
+ * disproven its subtree is no longer needed and is returned to the pool. If
+ * the pool still runs out, the most-proving leaf is solved in place by a
+ * depth-first proof-number search (df-pn), which keeps its proof and
+ * disproof numbers in a fixed-size hash table instead of a tree.
+ * </p>
+ * <p>
+ * Positions with more than {@link #getMaxEmpties()} empty squares are not
+ * searched; the player then simply makes the move that leaves the opponent
+ * the fewest replies. Without a deadline, a move may create and visit at
+ * most {@link #getNodeLimit()} nodes. If the time or the nodes run out
+ * before a proof is found, the player makes the most promising move, the one
+ * with the smallest proof number.
+ * </p>
+ */
+public class ProofNumberOthelloPlayer extends OthelloPlayer {
+    /**
+     * Proof and disproof numbers of solved nodes; sums are capped here.
+     */
+    private static final int INFINITY = 1 << 28;
+
+    /**
+     * The number of bytes each node of the pool takes.
+     */
+    private static final int NODE_BYTES = 8 + 8 + 5 * 4 + 2;
+
+    /**
+     * The number of bytes each entry of the df-pn table takes.
+     */
+    private static final int TABLE_ENTRY_BYTES = 8 + 4 + 4 + 4;
+
+    private static final int MIN_TABLE_ENTRIES = 1 << 16;
+
+    /**
+     * Leaves with this many empty squares or fewer are solved outright by an
+     * {@link EndgameSolver} instead of being expanded.
+     */
+    private static final int SOLVE_EMPTIES = 6;
+
+    private static final int NONE = -1;
+
+    /**
+     * The default number of nodes a move may create and visit without a
+     * deadline.
+     */
+    private static final long DEFAULT_NODE_LIMIT = 1L << 20;
+
+    // The node pool
+    private final long own[];
+    private final long opp[];
+    private final int pn[];
+    private final int dn[];
+    private final int parent[];
+    private final int firstChild[];
+    private final int sibling[];
+    private final byte move[];
+    private final boolean orNode[];
+    private int nextUnused;
+    private int freeList;
+    private int used;
+
+    // The df-pn table
+    private final long tableKeys[];
+    private final int tablePn[];
+    private final int tableDn[];
+    private final int tableWork[];
+    private final int dfpnMoves[][];
+    private boolean tableUsed;
+
+    private final EndgameSolver solver = new EndgameSolver();
+    private int maxEmpties = 30;
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    private int minScore;
+    private TimeManager time;
+    private long moveNodeLimit;
+
+    private long nodesCreated = 0;
+    private long dfpnNodes = 0;
+    private int peakNodes = 0;
+
+    /**
+     * Constructs a player with a pool of about a million nodes.
+     *
+     * @param name the name of the player
+     */
+    public ProofNumberOthelloPlayer(String name) {
+        this(name, 1 << 20);
+    }
+
+    /**
+     * Constructs a player whose proof tree holds at most
+     * <code>poolNodes</code> nodes; the df-pn table has as many entries, but
+     * at least 65536.
+     *
+     * @param name the name of the player
+     * @param poolNodes the size of the node pool
+     */
+    public ProofNumberOthelloPlayer(String name, int poolNodes) {
+        super(name);
+        if (poolNodes < 64 || Integer.bitCount(poolNodes) != 1)
+            throw new IllegalArgumentException("The pool size must be a power of two of at least 64!");
+        own = new long[poolNodes];
+        opp = new long[poolNodes];
+        pn = new int[poolNodes];
+        dn = new int[poolNodes];
+        parent = new int[poolNodes];
+        firstChild = new int[poolNodes];
+        sibling = new int[poolNodes];
+        move = new byte[poolNodes];
+        orNode = new boolean[poolNodes];
+        int entries = Math.max(poolNodes, MIN_TABLE_ENTRIES);
+        tableKeys = new long[entries];
+        tablePn = new int[entries];
+        tableDn = new int[entries];
+        tableWork = new int[entries];
+        dfpnMoves = new int[128][64];
+    }
+
+    /**
+     * Sets the largest number of empty squares of positions that are
+     * searched. The default is 30.
+     */
+    public void setMaxEmpties(int maxEmpties) {
+        this.maxEmpties = maxEmpties;
+    }
+
+    /**
+     * Returns the largest number of empty squares of positions that are
+     * searched.
+     */
+    public int getMaxEmpties() {
+        return maxEmpties;
+    }
+
+    /**
+     * Sets the most nodes (proof tree nodes created plus df-pn nodes visited)
+     * a move may take when there is no deadline. The default is 1048576.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit <= 0)
+            throw new IllegalArgumentException("The node limit must be positive!");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Returns the most nodes a move may take when there is no deadline.
+     */
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * Returns the number of proof tree nodes created so far.
+     */
+    public long getNodesCreated() {
+        return nodesCreated;
+    }
+
+    /**
+     * Returns the number of nodes visited by the df-pn fallback so far.
+     */
+    public long getDfpnNodes() {
+        return dfpnNodes;
+    }
+
+    /**
+     * Returns the most memory, in bytes, the proof tree and (if it was used)
+     * the df-pn table have needed at once.
+     */
+    public long getPeakMemory() {
+        return (long) peakNodes * NODE_BYTES
+                + (tableUsed ? (long) tableKeys.length * TABLE_ENTRY_BYTES : 0);
+    }
+
+    /**
+     * Tries to prove a win, and if that is disproven, a draw.
+     *
+     * @param currentState current state of the game
+     * @param deadline maximum amount of time the operation can take
+     * @return return the best move for MaxPlayer
+     */
+    @Override
+    public Square getMove(GameState currentState, Date deadline) {
+        time = new TimeManager(deadline == null ? TimeManager.UNLIMITED : getMillisUntilDeadline());
+        GameState.Player player = currentState.getCurrentPlayer();
+        long o = currentState.getDiscs(player);
+        long p = currentState.getDiscs(currentState.getOpponent(player));
+        long moves = BitBoard.legalMoves(o, p);
+        if (moves == 0)
+            return null;
+        int empties = 64 - Long.bitCount(o | p);
+        if ((moves & (moves - 1)) == 0 || empties > maxEmpties)
+            return Square.of(fastestMove(o, p, moves));
+
+        long created = nodesCreated;
+        moveNodeLimit = (deadline == null ? nodesCreated + dfpnNodes + nodeLimit : Long.MAX_VALUE);
+        String result = "a win";
+        int root = prove(o, p, 1);
+        boolean winDisproven = (dn[root] == 0);
+        if (winDisproven) {
+            result = "a draw";
+            root = prove(o, p, 0);
+            if (dn[root] == 0)
+                result = "a loss";
+        }
+        if (pn[root] == 0 || dn[root] == 0)
+            log("Proved " + result + " with " + empties + " empties in " + time.getElapsedMillis()
+                    + " ms, " + (nodesCreated - created) + " nodes created, peak memory "
+                    + getPeakMemory() / 1024 + " KB");
+        else if (winDisproven)
+            log("Disproved a win with " + empties + " empties, but found no proof of a draw after "
+                    + time.getElapsedMillis() + " ms");
+        else
+            log("No proof with " + empties + " empties after " + time.getElapsedMillis() + " ms");
+        return Square.of(bestMove(root, o, p, moves));
+    }
+
+    /**
+     * Returns the move that leaves the opponent the fewest replies.
+     */
+    private static int fastestMove(long o, long p, long moves) {
+        int best = NONE;
+        int fewest = Integer.MAX_VALUE;
+        for (; moves != 0; moves &= moves - 1) {
+            int x = Long.numberOfTrailingZeros(moves);
+            long flips = BitBoard.flips(x, o, p);
+            int replies = Long.bitCount(BitBoard.legalMoves(p & ~flips, o | flips | (1L << x)));
+            if (replies < fewest) {
+                fewest = replies;
+                best = x;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the move of the root child with the smallest proof number (of
+     * those, the one with the largest disproof number): a proven move if
+     * there is one, otherwise the most promising one. If every move is
+     * disproven, the move that leaves the opponent the fewest replies is
+     * made instead.
+     */
+    private int bestMove(int root, long o, long p, long moves) {
+        int best = NONE;
+        for (int c = firstChild[root]; c != NONE; c = sibling[c])
+            if (best == NONE || pn[c] < pn[best] || (pn[c] == pn[best] && dn[c] > dn[best]))
+                best = c;
+        return (best == NONE || pn[best] >= INFINITY ? fastestMove(o, p, moves) : move[best]);
+    }
+
+    /**
+     * Returns <code>true</code> once the time, or the nodes, of this move are
+     * spent, after which <code>time.isAborted()</code> is also
+     * <code>true</code>.
+     */
+    private boolean isTimeUp() {
+        if (nodesCreated + dfpnNodes >= moveNodeLimit)
+            time.abort();
+        return time.isTimeUp();
+    }
+
+    /**
+     * Runs proof-number search on the position until it is proven that the
+     * player to move can finish at least <code>minScore</code> discs ahead,
+     * disproven, or the time runs out.
+     *
+     * @return the root node
+     */
+    private int prove(long o, long p, int minScore) {
+        this.minScore = minScore;
+        nextUnused = 0;
+        freeList = NONE;
+        used = 0;
+        for (int i = 0; i < tableKeys.length; i++) {
+            tableKeys[i] = 0;
+            tableWork[i] = 0;
+        }
+
+        int root = allocate(o, p, true, NONE, NONE);
+        while (pn[root] != 0 && dn[root] != 0 && !isTimeUp()) {
+            int n = root;
+            while (firstChild[n] != NONE)
+                n = mostProvingChild(n);
+            if (!expand(n)) {
+                /* the pool is full: solve the leaf without growing the tree */
+                tableUsed = true;
+                dfpn(own[n], opp[n], orNode[n], INFINITY, INFINITY, 0);
+                if (time.isAborted())
+                    break;
+                lookup(own[n], opp[n], orNode[n]);
+                pn[n] = initialPn;
+                dn[n] = initialDn;
+            }
+            update(n, root);
+        }
+        return root;
+    }
+
+    /**
+     * Returns the child of <code>n</code> through which the most-proving node
+     * is reached.
+     */
+    private int mostProvingChild(int n) {
+        for (int c = firstChild[n]; c != NONE; c = sibling[c])
+            if (orNode[n] ? pn[c] == pn[n] : dn[c] == dn[n])
+                return c;
+        return firstChild[n];
+    }
+
+    /**
+     * Creates the children of leaf <code>n</code>.
+     *
+     * @return <code>false</code> if the pool has no room for them.
+     */
+    private boolean expand(int n) {
+        long o = own[n];
+        long p = opp[n];
+        long moves = BitBoard.legalMoves(o, p);
+        int children = (moves == 0 ? 1 : Long.bitCount(moves));
+        if (own.length - used < children)
+            return false;
+        if (moves == 0) {
+            /* the node is not terminal, so this is a pass */
+            firstChild[n] = allocate(p, o, !orNode[n], n, NONE);
+            return true;
+        }
+        int last = NONE;
+        for (; moves != 0; moves &= moves - 1) {
+            int x = Long.numberOfTrailingZeros(moves);
+            long flips = BitBoard.flips(x, o, p);
+            int c = allocate(p & ~flips, o | flips | (1L << x), !orNode[n], n, x);
+            if (last == NONE)
+                firstChild[n] = c;
+            else
+                sibling[last] = c;
+            last = c;
+        }
+        return true;
+    }
+
+    /**
+     * Recomputes the proof and disproof numbers from <code>n</code> up to the
+     * root, returning the subtrees of solved nodes to the pool.
+     */
+    private void update(int n, int root) {
+        for (; n != NONE; n = parent[n]) {
+            if (firstChild[n] != NONE) {
+                int min = INFINITY;
+                int sum = 0;
+                for (int c = firstChild[n]; c != NONE; c = sibling[c]) {
+                    min = Math.min(min, orNode[n] ? pn[c] : dn[c]);
+                    sum = Math.min(INFINITY, sum + (orNode[n] ? dn[c] : pn[c]));
+                }
+                pn[n] = (orNode[n] ? min : sum);
+                dn[n] = (orNode[n] ? sum : min);
+            }
+            if ((pn[n] == 0 || dn[n] == 0) && n != root && firstChild[n] != NONE) {
+                free(firstChild[n]);
+                firstChild[n] = NONE;
+            }
+        }
+    }
+
+    /**
+     * Allocates a leaf node with initial proof and disproof numbers.
+     */
+    private int allocate(long o, long p, boolean or, int parentNode, int x) {
+        int n;
+        if (freeList != NONE) {
+            n = freeList;
+            freeList = sibling[n];
+        }
+        else
+            n = nextUnused++;
+        used++;
+        peakNodes = Math.max(peakNodes, used);
+        nodesCreated++;
+        own[n] = o;
+        opp[n] = p;
+        orNode[n] = or;
+        parent[n] = parentNode;
+        firstChild[n] = NONE;
+        sibling[n] = NONE;
+        move[n] = (byte) x;
+        initialize(o, p, or);
+        pn[n] = initialPn;
+        dn[n] = initialDn;
+        return n;
+    }
+
+    /**
+     * Returns the node <code>n</code>, its siblings after it and all their
+     * descendants to the pool.
+     */
+    private void free(int n) {
+        while (n != NONE) {
+            int next = sibling[n];
+            if (firstChild[n] != NONE)
+                free(firstChild[n]);
+            sibling[n] = freeList;
+            freeList = n;
+            used--;
+            n = next;
+        }
+    }
+
+    // Set by initialize() and lookup()
+    private int initialPn;
+    private int initialDn;
+
+    /**
+     * Sets {@link #initialPn} and {@link #initialDn} for a leaf. Finished
+     * games and positions with at most {@link #SOLVE_EMPTIES} empty squares are solved outright
+     * with a null window around the goal; other leaves get one for the player
+     * to move and the number of moves for the other side, since all of them
+     * have to be refuted.
+     */
+    private void initialize(long o, long p, boolean or) {
+        long moves = BitBoard.legalMoves(o, p);
+        if (moves == 0 && BitBoard.legalMoves(p, o) == 0) {
+            int diff = Long.bitCount(o) - Long.bitCount(p);
+            boolean proven = (or ? diff : -diff) >= minScore;
+            initialPn = (proven ? 0 : INFINITY);
+            initialDn = (proven ? INFINITY : 0);
+            return;
+        }
+        if (64 - Long.bitCount(o | p) <= SOLVE_EMPTIES) {
+            /* the goal is a differential of at least minScore for the root player */
+            boolean proven;
+            if (or)
+                proven = solver.solveRoot(o, p, minScore - 1, minScore, null) >= minScore;
+            else
+                proven = solver.solveRoot(o, p, -minScore, 1 - minScore, null) <= -minScore;
+            initialPn = (proven ? 0 : INFINITY);
+            initialDn = (proven ? INFINITY : 0);
+            return;
+        }
+        /* a pass leaves a single move */
+        int m = Math.max(1, Long.bitCount(moves));
+        initialPn = (or ? 1 : m);
+        initialDn = (or ? m : 1);
+    }
+
+    /**
+     * Returns the hash table key of a df-pn position.
+     */
+    private static long key(long o, long p, boolean or) {
+        /* the index is taken from the low bits, so every bit of both sides must reach them */
+        long h = o * 0x9e3779b97f4a7c15L + Long.rotateLeft(p, 32);
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return (or ? h : ~h) | 1;
+    }
+
+    /**
+     * Sets {@link #initialPn} and {@link #initialDn} to the numbers stored for
+     * a position, or to its initial numbers if none are stored.
+     */
+    private void lookup(long o, long p, boolean or) {
+        long k = key(o, p, or);
+        int i = (int) k & (tableKeys.length - 2);
+        if (tableKeys[i] != k)
+            i++;
+        if (tableKeys[i] == k) {
+            initialPn = tablePn[i];
+            initialDn = tableDn[i];
+        }
+        else {
+            initialize(o, p, or);
+            if (initialPn == 0 || initialDn == 0)
+                /* do not solve the same position twice */
+                store(o, p, or, initialPn, initialDn, 1);
+        }
+    }
+
+    /**
+     * Stores the numbers of a position in the table. Each position may go in
+     * either entry of a bucket of two; the entry whose search took less work
+     * is replaced, so that expensive results survive longest.
+     */
+    private void store(long o, long p, boolean or, int proof, int disproof, long work) {
+        long k = key(o, p, or);
+        int i = (int) k & (tableKeys.length - 2);
+        if (tableKeys[i] != k && (tableKeys[i + 1] == k || tableWork[i + 1] < tableWork[i]))
+            i++;
+        tableKeys[i] = k;
+        tablePn[i] = proof;
+        tableDn[i] = disproof;
+        tableWork[i] = (int) Math.min(work, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Depth-first proof-number search: searches the position until its proof
+     * number reaches <code>thpn</code> or its disproof number reaches
+     * <code>thdn</code>, and stores the result in the table.
+     */
+    private void dfpn(long o, long p, boolean or, int thpn, int thdn, int ply) {
+        long start = dfpnNodes++;
+        if (isTimeUp())
+            return;
+        long moves = BitBoard.legalMoves(o, p);
+        if (64 - Long.bitCount(o | p) <= SOLVE_EMPTIES
+                || (moves == 0 && BitBoard.legalMoves(p, o) == 0)) {
+            initialize(o, p, or);
+            store(o, p, or, initialPn, initialDn, 1);
+            return;
+        }
+        if (moves == 0) {
+            /* a pass: the numbers are those of the only child */
+            dfpn(p, o, !or, thpn, thdn, ply + 1);
+            if (time.isAborted())
+                return;
+            lookup(p, o, !or);
+            store(o, p, or, initialPn, initialDn, dfpnNodes - start);
+            return;
+        }
+
+        int list[] = dfpnMoves[ply];
+        int n = 0;
+        for (; moves != 0; moves &= moves - 1)
+            list[n++] = Long.numberOfTrailingZeros(moves);
+
+        while (true) {
+            int min = INFINITY;
+            int second = INFINITY;
+            int sum = 0;
+            int best = 0;
+            int bestOther = 0;
+            for (int i = 0; i < n; i++) {
+                long flips = BitBoard.flips(list[i], o, p);
+                lookup(p & ~flips, o | flips | (1L << list[i]), !or);
+                int selecting = (or ? initialPn : initialDn);
+                int other = (or ? initialDn : initialPn);
+                if (selecting < min) {
+                    second = min;
+                    min = selecting;
+                    best = i;
+                    bestOther = other;
+                }
+                else if (selecting < second)
+                    second = selecting;
+                sum = Math.min(INFINITY, sum + other);
+            }
+            int proof = (or ? min : sum);
+            int disproof = (or ? sum : min);
+            if (proof >= thpn || disproof >= thdn || time.isAborted()) {
+                if (!time.isAborted())
+                    store(o, p, or, proof, disproof, dfpnNodes - start);
+                return;
+            }
+
+            long flips = BitBoard.flips(list[best], o, p);
+            long co = p & ~flips;
+            long cp = o | flips | (1L << list[best]);
+            if (or)
+                dfpn(co, cp, false, Math.min(thpn, second + 1), thdn - disproof + bestOther,
+                        ply + 1);
+            else
+                dfpn(co, cp, true, thpn - proof + bestOther, Math.min(thdn, second + 1), ply + 1);
+        }
+    }
+}
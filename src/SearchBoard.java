@@ -0,0 +1,228 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+
+/**
+ * A mutable Othello board for search algorithms. Where
+ * {@link GameState#applyMove(Square)} returns a new state for every move, a
+ * <code>SearchBoard</code> is updated in place with {@link #makeMove(int)} and
+ * restored with {@link #undoMove()}, so a recursive search can walk the whole
+ * tree on a single object without allocating anything per node.
+ * <p>
+ * The board is stored relative to the player to move: {@link #getOwnDiscs()}
+ * are that player's discs and {@link #getOpponentDiscs()} are the other
+ * player's. Unlike <code>GameState</code>, a <code>SearchBoard</code> never
+ * skips a turn by itself; when the player to move has no legal moves the
+ * search must call {@link #pass()} explicitly (or stop if neither player can
+ * move).
+ * </p>
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * for (long moves = board.legalMoveMask(); moves != 0; moves &amp;= moves - 1) {
+ *     board.makeMove(Long.numberOfTrailingZeros(moves));
+ *     int score = -search(board, depth - 1);
+ *     board.undoMove();
+ * }
+ * </pre>
+ *
+ * </p>
+ *
+ * @see GameState
+ */
+public class SearchBoard {
+    private long own;
+    private long opp;
+    private GameState.Player player;
+    private long zobrist;
+    private long ownStack[];
+    private long oppStack[];
+    private long zobristStack[];
+    private int ply;
+
+    /**
+     * Constructs a new <code>SearchBoard</code> holding the position of the
+     * given state.
+     */
+    public SearchBoard(GameState state) {
+        this(state.getDiscs(state.getCurrentPlayer()), state.getDiscs(state.getOpponent(state
+                .getCurrentPlayer())), state.getCurrentPlayer(), state.getZobristKey());
+    }
+
+    /**
+     * Constructs a board holding the position in which the player to move owns
+     * <code>own</code> and the opponent owns <code>opp</code>. The player to
+     * move is taken to be {@link GameState.Player#PLAYER1}.
+     */
+    SearchBoard(long own, long opp) {
+        this(own, opp, GameState.Player.PLAYER1, Zobrist.hash(own, opp, false));
+    }
+
+    private SearchBoard(long own, long opp, GameState.Player player, long zobrist) {
+        this.player = player;
+        this.own = own;
+        this.opp = opp;
+        this.zobrist = zobrist;
+        ownStack = new long[128];
+        oppStack = new long[128];
+        zobristStack = new long[128];
+        ply = 0;
+    }
+
+    /**
+     * Returns the player whose turn it is to move.
+     */
+    public GameState.Player getCurrentPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns a bit mask of the squares owned by the player to move.
+     */
+    public long getOwnDiscs() {
+        return own;
+    }
+
+    /**
+     * Returns a bit mask of the squares owned by the opponent of the player to
+     * move.
+     */
+    public long getOpponentDiscs() {
+        return opp;
+    }
+
+    /**
+     * Returns the Zobrist key of the current position. It is equal to
+     * {@link GameState#getZobristKey()} of the corresponding
+     * <code>GameState</code>.
+     */
+    public long getZobristKey() {
+        return zobrist;
+    }
+
+    /**
+     * Returns the number of moves and passes made since this board was
+     * constructed that have not been undone.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns the number of empty squares.
+     */
+    public int getEmpties() {
+        return 64 - Long.bitCount(own | opp);
+    }
+
+    /**
+     * Returns the number of discs of the player to move minus the number of
+     * discs of the opponent.
+     */
+    public int getDiscDifference() {
+        return Long.bitCount(own) - Long.bitCount(opp);
+    }
+
+    /**
+     * Returns a bit mask of the legal moves for the player to move.
+     */
+    public long legalMoveMask() {
+        return BitBoard.legalMoves(own, opp);
+    }
+
+    /**
+     * Returns a bit mask of the moves that would be legal for the opponent if
+     * it were the opponent's turn.
+     */
+    public long opponentMoveMask() {
+        return BitBoard.legalMoves(opp, own);
+    }
+
+    /**
+     * Returns <code>true</code> if and only if neither player can move.
+     */
+    public boolean isGameOver() {
+        return legalMoveMask() == 0 && opponentMoveMask() == 0;
+    }
+
+    /**
+     * Plays the move to square <code>index</code> (<code>8 * row + col</code>)
+     * for the player to move and hands the turn to the opponent. The move is
+     * assumed to be legal; no checking is done.
+     *
+     * @return the mask of discs flipped by the move.
+     */
+    public long makeMove(int index) {
+        long flipped = BitBoard.flips(index, own, opp);
+        push();
+        long placed = 1L << index;
+        long newOwn = own | flipped | placed;
+        own = opp & ~flipped;
+        opp = newOwn;
+        zobrist ^= (player == GameState.Player.PLAYER1 ? Zobrist.PLAYER1[index]
+                : Zobrist.PLAYER2[index]) ^ Zobrist.flip(flipped) ^ Zobrist.PLAYER2_TO_MOVE;
+        player = (player == GameState.Player.PLAYER1 ? GameState.Player.PLAYER2
+                : GameState.Player.PLAYER1);
+        return flipped;
+    }
+
+    /**
+     * Plays the given move for the player to move and hands the turn to the
+     * opponent.
+     *
+     * @throws InvalidMoveException if <code>move</code> is not a legal move
+     *             for the player to move.
+     */
+    public void makeMove(Square move) throws InvalidMoveException {
+        if (move == null)
+            throw new InvalidMoveException(move, player,
+                    "The move sent to SearchBoard.makeMove() was null!");
+        int index = 8 * move.row + move.col;
+        if ((legalMoveMask() & (1L << index)) == 0)
+            throw new InvalidMoveException(move, player, "This move is not legal!");
+        makeMove(index);
+    }
+
+    /**
+     * Hands the turn to the opponent without placing a disc. Passes are
+     * undone with {@link #undoMove()} like any other move.
+     */
+    public void pass() {
+        push();
+        long tmp = own;
+        own = opp;
+        opp = tmp;
+        zobrist ^= Zobrist.PLAYER2_TO_MOVE;
+        player = (player == GameState.Player.PLAYER1 ? GameState.Player.PLAYER2
+                : GameState.Player.PLAYER1);
+    }
+
+    /**
+     * Takes back the last move or pass.
+     *
+     * @throws IllegalStateException if there is no move to undo.
+     */
+    public void undoMove() {
+        if (ply == 0)
+            throw new IllegalStateException("There is no move to undo!");
+        ply--;
+        own = ownStack[ply];
+        opp = oppStack[ply];
+        zobrist = zobristStack[ply];
+        player = (player == GameState.Player.PLAYER1 ? GameState.Player.PLAYER2
+                : GameState.Player.PLAYER1);
+    }
+
+    private void push() {
+        if (ply == ownStack.length) {
+            ownStack = Arrays.copyOf(ownStack, 2 * ply);
+            oppStack = Arrays.copyOf(oppStack, 2 * ply);
+            zobristStack = Arrays.copyOf(zobristStack, 2 * ply);
+        }
+        ownStack[ply] = own;
+        oppStack[ply] = opp;
+        zobristStack[ply] = zobrist;
+        ply++;
+    }
+}
@@ -0,0 +1,250 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+
+/**
+ * Common base of the negamax search players. It runs the iterative-deepening
+ * loop under a {@link TimeManager}, keeps the search statistics required by
+ * {@link MiniMax} and provides the evaluation function; subclasses supply
+ * the search performed at each depth through
+ * {@link #searchIteration(SearchBoard, int, int)}.
+ * <p>
+ * Scores are from the point of view of the player to move. Finished games
+ * score {@link #WIN} plus the final disc difference (or minus, for losses), so
+ * that any proven win outranks every heuristic evaluation.
+ * </p>
+ */
+public abstract class SearchOthelloPlayer extends OthelloPlayer implements MiniMax {
+    /**
+     * Larger than any score.
+     */
+    public static final int INFINITY = 1000000;
+    /**
+     * The score of a won game, before adding the final disc difference.
+     */
+    public static final int WIN = Evaluator.WIN;
+    /**
+     * Without a deadline or a depth limit, search this deep.
+     */
+    protected static final int DEFAULT_DEPTH = 8;
+
+    private static final long CORNERS = 0x8100000000000081L;
+
+    protected int depthLimit;
+    protected TimeManager time;
+    protected final EndgameSolver endgame = new EndgameSolver();
+    protected int staticEvaluations;
+    protected long nodesGenerated;
+    protected long expandedNodes;
+    protected long totalChildren;
+    protected long solverNodes;
+
+    /**
+     * Constructs a player that searches as deep as its time allows, or to
+     * <code>depthLimit</code> plies if that is not <code>-1</code>.
+     */
+    public SearchOthelloPlayer(String name, int depthLimit) {
+        super(name);
+        this.depthLimit = depthLimit;
+    }
+
+    /**
+     * Searches the position on <code>board</code> to the given depth,
+     * returning its score and recording the best move for
+     * {@link #getIterationMove()}. The result is discarded if
+     * {@link #time} is aborted.
+     *
+     * @param previousScore the score of the previous iteration, or zero for
+     *            the first iteration.
+     */
+    protected abstract int searchIteration(SearchBoard board, int depth, int previousScore);
+
+    /**
+     * Returns the best move (as a square index) found by the last call to
+     * {@link #searchIteration(SearchBoard, int, int)}.
+     */
+    protected abstract int getIterationMove();
+
+    /**
+     * Chooses a move by iterative deepening: each iteration searches one ply
+     * deeper than the last for as long as the time manager expects it to
+     * finish before the deadline. If the time runs out during an iteration,
+     * the best move of the last completed iteration is returned.
+     */
+    public Square getMove(GameState currentState, Date deadline) {
+        time = new TimeManager(deadline == null ? TimeManager.UNLIMITED : getMillisUntilDeadline());
+        SearchBoard board = new SearchBoard(currentState);
+        long moves = board.legalMoveMask();
+        if (moves == 0)
+            return null;
+        if ((moves & (moves - 1)) == 0)
+            return Square.of(Long.numberOfTrailingZeros(moves));
+
+        Square book = getBookMove(currentState);
+        if (book != null)
+            return book;
+
+        Square solved = solveEndgame(board);
+        if (solved != null)
+            return solved;
+
+        int maxDepth = board.getEmpties();
+        if (depthLimit != -1)
+            maxDepth = Math.min(maxDepth, depthLimit);
+        else if (time.isUnlimited())
+            maxDepth = Math.min(maxDepth, DEFAULT_DEPTH);
+
+        int bestMove = TranspositionTable.NO_MOVE;
+        int score = 0;
+        int depth = 1;
+        while (depth <= maxDepth && time.canStartIteration()) {
+            long nodes = nodesGenerated;
+            time.startIteration();
+            int s = searchIteration(board, depth, score);
+            if (time.isAborted() || getIterationMove() == TranspositionTable.NO_MOVE)
+                break;
+            score = s;
+            bestMove = getIterationMove();
+            time.endIteration(nodesGenerated - nodes);
+            depth++;
+        }
+
+        if (bestMove == TranspositionTable.NO_MOVE)
+            /* not even the first iteration finished; any legal move will do */
+            bestMove = Long.numberOfTrailingZeros(moves);
+        log("Searched " + (depth - 1) + " plies in " + time.getElapsedMillis() + " ms, score "
+                + score);
+        return Square.of(bestMove);
+    }
+
+    /**
+     * Solves the position on <code>board</code> if it is close enough to the
+     * end of the game (see {@link EndgameSolver#chooseMove(long, long,
+     * TimeManager)}). Under a deadline the solver may use half of the
+     * remaining time; if it does not finish, the heuristic search gets the
+     * rest. Without a deadline the solver is only used if it searches no
+     * deeper than the depth limit.
+     *
+     * @return the best move, or <code>null</code> if the position was not
+     *         solved.
+     */
+    protected Square solveEndgame(SearchBoard board) {
+        if (!endgame.willSolve(board.getEmpties()))
+            return null;
+        if (time.isUnlimited() && depthLimit != -1 && board.getEmpties() > depthLimit)
+            return null;
+        TimeManager solveTime = (time.isUnlimited() ? time : new TimeManager(
+                getMillisUntilDeadline() / 2));
+        int move = endgame.chooseMove(board.getOwnDiscs(), board.getOpponentDiscs(), solveTime);
+        solverNodes += endgame.getLastNodes();
+        if (endgame.wasExact())
+            log("Solved " + board.getEmpties() + " empties in " + time.getElapsedMillis()
+                    + " ms, final disc differential " + endgame.getLastScore());
+        else if (!solveTime.isAborted())
+            log("Proved a " + (endgame.getLastScore() > 0 ? "win"
+                    : (endgame.getLastScore() < 0 ? "loss" : "draw")) + " with "
+                    + board.getEmpties() + " empties in " + endgame.getLastNodes() + " nodes");
+        return (move == EndgameSolver.NO_MOVE ? null : Square.of(move));
+    }
+
+    /**
+     * Returns the heuristic value of the position on <code>board</code> for
+     * the player to move, which must not be a finished game. Unless an
+     * {@link Evaluator} is set, this weighs mobility and corners.
+     */
+    protected int evaluate(SearchBoard board) {
+        long own = board.getOwnDiscs();
+        long opp = board.getOpponentDiscs();
+        Evaluator evaluator = getEvaluator();
+        if (evaluator != null)
+            return evaluator.evaluate(own, opp);
+        int mobility = Long.bitCount(board.legalMoveMask())
+                - Long.bitCount(board.opponentMoveMask());
+        int corners = Long.bitCount(own & CORNERS) - Long.bitCount(opp & CORNERS);
+        return 10 * mobility + 50 * corners;
+    }
+
+    /**
+     * Returns the score of a finished game for the player to move.
+     */
+    public static int finalScore(SearchBoard board) {
+        int diff = board.getDiscDifference();
+        if (diff > 0)
+            return WIN + diff;
+        else if (diff < 0)
+            return -WIN + diff;
+        else
+            return 0;
+    }
+
+    /**
+     * Adds the statistics gathered by a search to this player's totals.
+     */
+    protected void collectStatistics(NegaScoutSearch search) {
+        nodesGenerated += search.nodes;
+        staticEvaluations += (int) search.evaluations;
+        expandedNodes += search.expandedNodes;
+        totalChildren += search.totalChildren;
+        search.nodes = 0;
+        search.evaluations = 0;
+        search.expandedNodes = 0;
+        search.totalChildren = 0;
+    }
+
+    /**
+     * Evaluates <code>state</code> for the player to move.
+     */
+    public int staticEvaluator(GameState state) {
+        staticEvaluations++;
+        SearchBoard board = new SearchBoard(state);
+        if (board.isGameOver())
+            return finalScore(board);
+        return evaluate(board);
+    }
+
+    /**
+     * Get the number of nodes generated
+     *
+     * @return the number of nodes generated.
+     */
+    public int getNodesGenerated() {
+        return (int) nodesGenerated;
+    }
+
+    /**
+     * Returns the number of nodes searched by the endgame solver, which are
+     * not counted by {@link #getNodesGenerated()} or the branching factors.
+     */
+    public long getSolverNodes() {
+        return solverNodes;
+    }
+
+    /**
+     * Get the number of static evaluations
+     *
+     * @return the number of static evaluations performed.
+     */
+    public int getStaticEvaluations() {
+        return staticEvaluations;
+    }
+
+    /**
+     * Get the average branching factor of the nodes that
+     * were expanded during the search.
+     *
+     * @return the average branching factor.
+     */
+    public double getAveBranchingFactor() {
+        return (double) totalChildren / (double) expandedNodes;
+    }
+
+    /**
+     * Get the effective branching factor of the nodes that
+     * were expanded during the search.
+     *
+     * @return the effective branching factor.
+     */
+    public double getEffectiveBranchingFactor() {
+        return (double) nodesGenerated / (double) expandedNodes;
+    }
+}
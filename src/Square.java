@@ -6,12 +6,24 @@
  * For a description of the string representation of Othello board squares,
  * {@link #Square(String) see here}.
  * </p>
+ * <p>
+ * There are only 64 distinct squares, so code that creates squares frequently
+ * should use the {@link #of(int, int)} and {@link #of(int)} factories, which
+ * return canonical shared instances instead of allocating new ones. Squares are
+ * immutable, so the shared instances may be compared by identity.
+ * </p>
  * @author <a href="http://www.sultanik.com" target="_blank">Evan A.
  *         Sultanik</a>
  */
 public class Square {
-    int row, col;
+    final int row, col;
     static final String colnames[] = { "a", "b", "c", "d", "e", "f", "g", "h" };
+    private static final Square SQUARES[] = new Square[64];
+
+    static {
+        for (int i = 0; i < 64; i++)
+            SQUARES[i] = new Square(i >>> 3, i & 7);
+    }
 
     /**
      * Constructs a new <code>Square</code> from a string representation of the
@@ -49,33 +61,38 @@ public class Square {
      *             from the string.
      */
     public Square(String square) throws IllegalArgumentException {
-        boolean error = false;
-        if (square.length() != 2)
-            error = true;
-        else {
-            try {
-                square = square.toLowerCase();
-                char c1 = square.charAt(0);
-                char c2 = square.charAt(1);
-                row = intValue(c1);
-                if (row >= 0) {
-                    col = colIdxFromName(c2);
-                }
-                else {
-                    row = intValue(c2);
-                    col = colIdxFromName(c1);
-                }
+        this(parse(square));
+    }
+
+    private Square(int index) {
+        this(index >>> 3, index & 7);
+    }
+
+    /**
+     * Returns the index (<code>8 * row + col</code>) of the square described
+     * by the given string.
+     * 
+     * @see #Square(String)
+     */
+    private static int parse(String square) throws IllegalArgumentException {
+        int row = -1;
+        int col = -1;
+        if (square.length() == 2) {
+            char c1 = Character.toLowerCase(square.charAt(0));
+            char c2 = Character.toLowerCase(square.charAt(1));
+            row = intValue(c1);
+            if (row >= 0) {
+                col = colIdxFromName(c2);
             }
-            catch (Exception e) {
-                error = true;
+            else {
+                row = intValue(c2);
+                col = colIdxFromName(c1);
             }
-            if (row < 0 || col < 0 || row >= 8 || col >= 8)
-                error = true;
         }
-
-        if (error)
+        if (row < 0 || col < 0 || row >= 8 || col >= 8)
             throw new IllegalArgumentException("Square definition \"" + square
                     + "\" is not properly formatted.");
+        return 8 * row + col;
     }
 
     /**
@@ -84,29 +101,58 @@ public class Square {
      * arguments are within the bounds of the standard 8<code>x</code>8 othello
      * board. Also note that the rows and columns are indexed from zero.
      * @see #Square(String)
+     * @see #of(int, int)
      */
     public Square(int row, int col) {
         this.row = row;
         this.col = col;
     }
 
-    int colIdxFromName(char c) {
-        for (int i = 0; i < colnames.length; i++) {
-            if (colnames[i].equals(new String(new char[] { c })))
-                return i;
-        }
-        return -1;
+    /**
+     * Returns the canonical instance of the square in the given row and
+     * column.
+     * 
+     * @throws IllegalArgumentException if the row or column is outside of the
+     *             board.
+     */
+    public static Square of(int row, int col) throws IllegalArgumentException {
+        if (row < 0 || row >= 8 || col < 0 || col >= 8)
+            throw new IllegalArgumentException("Square (" + row + ", " + col
+                    + ") is not on the board.");
+        return SQUARES[8 * row + col];
     }
 
-    int intValue(char c) {
-        int v = -1;
-        try {
-            v = Integer.parseInt(new String(new char[] { c }));
-        }
-        catch (NumberFormatException nfe) {
-            v = -1;
-        }
-        return v;
+    /**
+     * Returns the canonical instance of the square with the given
+     * {@link #getIndex() index}.
+     * 
+     * @throws IllegalArgumentException if the index is not in
+     *             <code>0&ndash;63</code>.
+     */
+    public static Square of(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= 64)
+            throw new IllegalArgumentException("Square index " + index + " is not on the board.");
+        return SQUARES[index];
+    }
+
+    /**
+     * Returns the canonical instance of the square described by the given
+     * string.
+     * 
+     * @throws IllegalArgumentException if a row and column could not be parsed
+     *             from the string.
+     * @see #Square(String)
+     */
+    public static Square of(String square) throws IllegalArgumentException {
+        return SQUARES[parse(square)];
+    }
+
+    static int colIdxFromName(char c) {
+        return (c >= 'a' && c <= 'h' ? c - 'a' : -1);
+    }
+
+    static int intValue(char c) {
+        return (c >= '0' && c <= '9' ? c - '0' : -1);
     }
 
     /**
@@ -123,6 +169,16 @@ public class Square {
         return col;
     }
 
+    /**
+     * Returns the index of this square, <code>8 * row + col</code>, which is
+     * also the bit representing this square in the board masks.
+     * 
+     * @see GameState#getDiscs(GameState.Player)
+     */
+    public int getIndex() {
+        return 8 * row + col;
+    }
+
     /**
      * Returns a string representation of this square.
      * @see #Square(String)
@@ -0,0 +1,180 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * Manages the time an iterative-deepening search may spend on one move.
+ * <p>
+ * Time is measured with the monotonic {@link System#nanoTime()} clock from the
+ * moment the manager is constructed. Before each iteration the search asks
+ * {@link #canStartIteration()}, which projects the duration of the next
+ * iteration from the duration of the last one and the growth in node counts
+ * between the last two (the effective branching factor); an iteration is only
+ * started if it is expected to finish in time. During an iteration the search
+ * polls {@link #isTimeUp()}, which becomes <code>true</code> once the budget
+ * is spent so the search can abort and fall back to the result of the last
+ * completed iteration.
+ * </p>
+ * <p>
+ * A time manager belongs to the thread that searches with it; only
+ * {@link #abort()} may be called from other threads.
+ * </p>
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * TimeManager time = new TimeManager(getMillisUntilDeadline());
+ * for (int depth = 1; depth &lt;= maxDepth &amp;&amp; time.canStartIteration(); depth++) {
+ *     time.startIteration();
+ *     Square move = search(state, depth, time);
+ *     if (time.isAborted())
+ *         break;
+ *     best = move;
+ *     time.endIteration(nodes);
+ * }
+ * </pre>
+ *
+ * </p>
+ */
+public class TimeManager {
+    /**
+     * Passed to the constructor when there is no deadline.
+     */
+    public static final long UNLIMITED = -1;
+
+    /**
+     * How many calls to {@link #isTimeUp()} are answered without reading the
+     * clock.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long start;
+    private final long budget;
+    private long iterationStart;
+    private long lastIterationTime;
+    private long lastIterationNodes;
+    private double branchingFactor;
+    private int completedIterations;
+    private int checkCountdown;
+    private volatile boolean aborted;
+
+    /**
+     * Constructs a time manager for a move that has to be made within
+     * <code>millis</code> milliseconds, or without a time limit if
+     * <code>millis</code> is {@link #UNLIMITED}. A safety margin is kept back
+     * so that the move reaches the game before the deadline.
+     */
+    public TimeManager(long millis) {
+        start = System.nanoTime();
+        if (millis == UNLIMITED)
+            budget = Long.MAX_VALUE;
+        else
+            budget = Math.max(0, millis - millis / 10 - 20) * 1000000L;
+        branchingFactor = 0;
+        completedIterations = 0;
+        checkCountdown = CHECK_INTERVAL;
+        aborted = false;
+    }
+
+    /**
+     * Returns <code>true</code> if and only if there is no time limit.
+     */
+    public boolean isUnlimited() {
+        return budget == Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of milliseconds elapsed since this manager was
+     * constructed.
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    /**
+     * Returns the number of milliseconds left until the time for this move is
+     * spent, or {@link Long#MAX_VALUE} if there is no time limit.
+     */
+    public long getRemainingMillis() {
+        if (isUnlimited())
+            return Long.MAX_VALUE;
+        return Math.max(0, budget - (System.nanoTime() - start)) / 1000000L;
+    }
+
+    /**
+     * Returns the number of iterations completed so far.
+     */
+    public int getCompletedIterations() {
+        return completedIterations;
+    }
+
+    /**
+     * Returns the effective branching factor measured between the last two
+     * completed iterations, or zero if fewer than two have completed.
+     */
+    public double getBranchingFactor() {
+        return branchingFactor;
+    }
+
+    /**
+     * Returns <code>true</code> if the next iteration is expected to finish
+     * before the time runs out. The first iteration may always start.
+     */
+    public boolean canStartIteration() {
+        if (isUnlimited() || completedIterations == 0)
+            return true;
+        long elapsed = System.nanoTime() - start;
+        double factor = (branchingFactor > 0 ? branchingFactor : 4.0);
+        return elapsed + lastIterationTime * factor <= budget;
+    }
+
+    /**
+     * Marks the start of an iteration.
+     */
+    public void startIteration() {
+        iterationStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the successful end of an iteration that searched
+     * <code>nodes</code> nodes.
+     */
+    public void endIteration(long nodes) {
+        lastIterationTime = System.nanoTime() - iterationStart;
+        if (lastIterationNodes > 0 && nodes > 0)
+            branchingFactor = Math.max(1.0, (double) nodes / (double) lastIterationNodes);
+        lastIterationNodes = nodes;
+        completedIterations++;
+    }
+
+    /**
+     * Returns <code>true</code> once the time for this move is spent, after
+     * which {@link #isAborted()} will also return <code>true</code>. This is
+     * cheap enough to call at every node; the clock is only read every few
+     * calls.
+     */
+    public boolean isTimeUp() {
+        if (aborted)
+            return true;
+        if (isUnlimited() || --checkCountdown > 0)
+            return false;
+        checkCountdown = CHECK_INTERVAL;
+        if (System.nanoTime() - start >= budget)
+            aborted = true;
+        return aborted;
+    }
+
+    /**
+     * Stops the search as if its time had run out. Unlike the other methods,
+     * this may be called from a thread other than the one searching.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    /**
+     * Returns <code>true</code> if the time ran out during the current
+     * iteration, in which case its results must be discarded.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,232 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * A fixed-size hash table of search results keyed by 64-bit position hashes
+ * (<i>e.g.</i> {@link GameState#getZobristKey()}). Each entry packs the
+ * search depth, the type of bound, the score and the best move into a single
+ * <code>long</code>, so entries take 16 bytes including the key and probing or
+ * storing never allocates.
+ * <p>
+ * Entries are grouped into buckets of two. Under the
+ * {@link Replacement#DEPTH_PREFERRED} policy the first entry of a bucket is
+ * only replaced by results from searches at least as deep, and the second
+ * entry is always replaced. Under {@link Replacement#ALWAYS_REPLACE} every
+ * position maps to a single entry that is always overwritten.
+ * </p>
+ * <p>
+ * Keys are stored exclusive-or'ed with their data, so an entry torn by
+ * concurrent writes fails verification instead of returning corrupted data.
+ * This makes it safe to share one table between search threads without
+ * locking.
+ * </p>
+ *
+ * @see HeapTranspositionTable
+ * @see OffHeapTranspositionTable
+ */
+public abstract class TranspositionTable {
+    /**
+     * The stored score is the exact value of the position.
+     */
+    public static final int EXACT = 1;
+    /**
+     * The stored score is a lower bound on the value of the position (the
+     * search failed high).
+     */
+    public static final int LOWER = 2;
+    /**
+     * The stored score is an upper bound on the value of the position (the
+     * search failed low).
+     */
+    public static final int UPPER = 3;
+    /**
+     * Returned by {@link #move(long)} when no best move is stored.
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * An enumeration of the policies for choosing which entry a new result
+     * replaces.
+     */
+    public enum Replacement {
+        /**
+         * Keep the deeper result in the first entry of each bucket and always
+         * replace the second one.
+         */
+        DEPTH_PREFERRED,
+        /**
+         * Always replace the single entry that a position maps to.
+         */
+        ALWAYS_REPLACE
+    }
+
+    private static long defaultMegabytes = 16;
+    private static boolean defaultOffHeap = false;
+
+    private final long mask;
+    private final Replacement replacement;
+
+    /**
+     * Constructs a table with the given number of entries, which must be a
+     * power of two and at least two.
+     */
+    protected TranspositionTable(long entries, Replacement replacement) {
+        if (entries < 2 || Long.bitCount(entries) != 1)
+            throw new IllegalArgumentException("The number of entries must be a power of two!");
+        mask = entries - 1;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Returns the largest power of two number of 16-byte entries that fits
+     * into the given number of megabytes.
+     */
+    protected static long entriesFor(long megabytes) {
+        if (megabytes <= 0)
+            throw new IllegalArgumentException("The table size must be positive!");
+        return Long.highestOneBit((megabytes << 20) / 16);
+    }
+
+    /**
+     * Sets the size and kind of the tables returned by {@link #create()}. The
+     * defaults are 16 MB on the heap.
+     * 
+     * @param offHeap whether to use an {@link OffHeapTranspositionTable}
+     *            instead of a {@link HeapTranspositionTable}.
+     */
+    public static void setDefaults(long megabytes, boolean offHeap) {
+        entriesFor(megabytes); /* validate */
+        defaultMegabytes = megabytes;
+        defaultOffHeap = offHeap;
+    }
+
+    /**
+     * Creates a new table with the size and kind set by
+     * {@link #setDefaults(long, boolean)}.
+     */
+    public static TranspositionTable create() {
+        return create(defaultMegabytes, defaultOffHeap);
+    }
+
+    /**
+     * Creates a new table of about the given size using the default
+     * {@link Replacement#DEPTH_PREFERRED} policy.
+     * 
+     * @param offHeap whether to use an {@link OffHeapTranspositionTable}
+     *            instead of a {@link HeapTranspositionTable}.
+     */
+    public static TranspositionTable create(long megabytes, boolean offHeap) {
+        if (offHeap)
+            return new OffHeapTranspositionTable(megabytes, Replacement.DEPTH_PREFERRED);
+        else
+            return new HeapTranspositionTable(megabytes, Replacement.DEPTH_PREFERRED);
+    }
+
+    /**
+     * Returns the key stored in entry <code>slot</code> (exclusive-or'ed with
+     * its data).
+     */
+    protected abstract long readKey(long slot);
+
+    /**
+     * Returns the data stored in entry <code>slot</code>.
+     */
+    protected abstract long readData(long slot);
+
+    /**
+     * Overwrites entry <code>slot</code>.
+     */
+    protected abstract void write(long slot, long key, long data);
+
+    /**
+     * Empties the table.
+     */
+    public abstract void clear();
+
+    /**
+     * Returns the number of entries in the table.
+     */
+    public long getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the replacement policy of the table.
+     */
+    public Replacement getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Looks up the entry for the position with the given key.
+     *
+     * @return the packed entry, to be unpacked with {@link #depth(long)},
+     *         {@link #bound(long)}, {@link #score(long)} and
+     *         {@link #move(long)}, or zero if the position is not in the
+     *         table.
+     */
+    public long probe(long key) {
+        /*
+         * store() tries the first entry of a bucket before the second, so a
+         * position may have a stale copy in the second entry but never in the
+         * first
+         */
+        long slot = key & mask & ~1L;
+        long data = readData(slot);
+        if (data != 0 && (readKey(slot) ^ data) == key)
+            return data;
+        slot |= 1;
+        data = readData(slot);
+        if (data != 0 && (readKey(slot) ^ data) == key)
+            return data;
+        return 0;
+    }
+
+    /**
+     * Stores a search result for the position with the given key.
+     *
+     * @param depth the depth to which the position was searched.
+     * @param bound one of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+     * @param score the score found by the search.
+     * @param move the index of the best move found, or {@link #NO_MOVE}.
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        long data = (score & 0xffffffffL) | ((long) Math.max(0, Math.min(depth, 255)) << 32)
+                | ((long) bound << 40) | ((long) (move + 1) << 42);
+        long slot = key & mask;
+        if (replacement == Replacement.DEPTH_PREFERRED) {
+            slot &= ~1L;
+            long old = readData(slot);
+            if (old != 0 && (readKey(slot) ^ old) != key && depth(old) > depth)
+                slot |= 1;
+        }
+        write(slot, key ^ data, data);
+    }
+
+    /**
+     * Returns the depth of a packed entry.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xff;
+    }
+
+    /**
+     * Returns the bound type of a packed entry.
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 3;
+    }
+
+    /**
+     * Returns the score of a packed entry.
+     */
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Returns the best move of a packed entry, or {@link #NO_MOVE}.
+     */
+    public static int move(long entry) {
+        return ((int) (entry >>> 42) & 0x7f) - 1;
+    }
+}
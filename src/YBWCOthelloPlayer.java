@@ -0,0 +1,559 @@
+// package edu.drexel.cs.ai.othello;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A player that searches with a parallel alpha-beta using the Young Brothers
+ * Wait Concept: at each node the first (eldest) child is searched serially,
+ * and only once its value is known are the remaining siblings searched in
+ * parallel as {@link ForkJoinPool} tasks. If one of them causes a cutoff the
+ * others are cancelled.
+ * <p>
+ * The search is deterministic: the siblings of a split node are all searched
+ * with the window known after the eldest child, a cutoff always returns the
+ * bound it exceeded, and no table or history is shared between threads. The
+ * value and the move chosen therefore never depend on how the threads are
+ * scheduled, so the player makes the same moves as with a single thread.
+ * </p>
+ * <p>
+ * Moves are chosen by iterative deepening under a {@link TimeManager}. If
+ * turned on with {@link #setMeasureSpeedup(boolean)}, the last completed
+ * iteration of every move without a deadline is repeated serially, so that
+ * {@link #getSpeedup()} and {@link #getSearchOverhead()} can compare the two
+ * searches.
+ * </p>
+ */
+public class YBWCOthelloPlayer extends OthelloPlayer implements MiniMax {
+    /**
+     * Nodes with fewer plies than this left to search are searched serially;
+     * their subtrees are too small to be worth a task.
+     */
+    private static final int MIN_SPLIT_DEPTH = 3;
+
+    private static final Comparator<Square> BY_RANK = new Comparator<Square>() {
+        public int compare(Square x, Square y) {
+            return Integer.compare(MoveOrdering.squareRank(y.getIndex()),
+                    MoveOrdering.squareRank(x.getIndex()));
+        }
+    };
+
+    /**
+     * Without a deadline or a depth limit, search this deep.
+     */
+    private static final int DEFAULT_DEPTH = 6;
+
+    private static boolean defaultMeasureSpeedup = false;
+
+    private int depthLimit = -1;
+    private final ForkJoinPool pool;
+    private boolean measureSpeedup = defaultMeasureSpeedup;
+
+    // Search state, written before each search starts
+    private GameState.Player maxPlayer;
+    private int iterationLimit;
+    private TimeManager time;
+    private boolean serial;
+
+    private final Statistics parallelStats = new Statistics();
+    private final Statistics serialStats = new Statistics();
+    private Statistics stats = parallelStats;
+    private long parallelTime = 0;
+    private long serialTime = 0;
+    private long comparedNodes = 0;
+
+    /**
+     * Constructor 1
+     *
+     * @param name the name of the player
+     */
+    public YBWCOthelloPlayer(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructor 2
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored, or -1 to search
+     *            as deep as the time allows
+     */
+    public YBWCOthelloPlayer(String name, int depthLimit) {
+        this(name, depthLimit, LazySMPOthelloPlayer.getDefaultThreads());
+    }
+
+    /**
+     * Constructor 3
+     *
+     * @param name the name of the player
+     * @param depthLimit maximum depth that can be explored, or -1 to search
+     *            as deep as the time allows
+     * @param parallelism the number of threads to search with
+     */
+    public YBWCOthelloPlayer(String name, int depthLimit, int parallelism) {
+        super(name);
+        if (depthLimit < 1 && depthLimit != -1)
+            throw new IllegalArgumentException("The depth limit must be positive!");
+        this.depthLimit = depthLimit;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Sets whether players constructed from now on measure their speedup
+     * (see {@link #setMeasureSpeedup(boolean)}). This is off by default.
+     */
+    public static void setDefaultMeasureSpeedup(boolean measureSpeedup) {
+        defaultMeasureSpeedup = measureSpeedup;
+    }
+
+    /**
+     * Sets whether the last completed iteration of every move is also
+     * searched serially to measure the speedup and the search overhead. The
+     * serial search roughly doubles the time taken per move, so moves made
+     * under a deadline are never measured.
+     */
+    public void setMeasureSpeedup(boolean measureSpeedup) {
+        this.measureSpeedup = measureSpeedup;
+    }
+
+    /**
+     * Returns <code>true</code> if the speedup is being measured.
+     */
+    public boolean isMeasuringSpeedup() {
+        return measureSpeedup;
+    }
+
+    /**
+     * Chooses a move by iterative deepening with the parallel search: each
+     * iteration searches one ply deeper than the last for as long as the time
+     * manager expects it to finish before the deadline. If the time runs out
+     * during an iteration, the best move of the last completed one is
+     * returned. If the speedup is being measured and there is no deadline,
+     * the last completed iteration is then repeated serially.
+     *
+     * @param currentState current state of the game
+     * @param deadline maximum amount of time the operation can take
+     * @return return the best move for MaxPlayer
+     */
+    @Override
+    public Square getMove(GameState currentState, Date deadline) {
+        time = new TimeManager(deadline == null ? TimeManager.UNLIMITED : getMillisUntilDeadline());
+
+        Square book = getBookMove(currentState);
+        if (book != null)
+            return book;
+
+        long moves = currentState.legalMoveMask();
+        if (moves == 0)
+            return null;
+        maxPlayer = currentState.getCurrentPlayer();
+
+        // Searching deeper than the number of empty squares finds nothing new
+        int maxDepth = currentState.getScore(GameState.Player.EMPTY);
+        if (depthLimit != -1)
+            maxDepth = Math.min(maxDepth, depthLimit);
+        else if (time.isUnlimited())
+            maxDepth = Math.min(maxDepth, DEFAULT_DEPTH);
+
+        Square optimalMove = null;
+        long iterationTime = 0;
+        long iterationNodes = 0;
+        int depth = 1;
+        while (depth <= maxDepth && time.canStartIteration()) {
+            long nodes = parallelStats.exploredSuccessors.get();
+            time.startIteration();
+            long start = System.nanoTime();
+
+            Square move = searchParallel(currentState, depth);
+            if (time.isAborted() || move == null)
+                break;
+
+            optimalMove = move;
+            iterationTime = System.nanoTime() - start;
+            iterationNodes = parallelStats.exploredSuccessors.get() - nodes;
+            time.endIteration(iterationNodes);
+            depth++;
+        }
+
+        if (optimalMove == null)
+            /* not even the first iteration finished; any legal move will do */
+            return Square.of(Long.numberOfTrailingZeros(moves));
+        log("Searched " + (depth - 1) + " plies in " + time.getElapsedMillis() + " ms");
+
+        /* a serial search would overrun the deadline */
+        if (measureSpeedup && deadline == null) {
+            iterationLimit = depth - 1;
+            time = new TimeManager(TimeManager.UNLIMITED);
+            serial = true;
+            stats = serialStats;
+            long start = System.nanoTime();
+            new RootTask(currentState).compute();
+            serialTime += System.nanoTime() - start;
+            parallelTime += iterationTime;
+            comparedNodes += iterationNodes;
+            stats = parallelStats;
+        }
+        return optimalMove;
+    }
+
+    /**
+     * Searches <code>state</code> to the given depth in the pool, waiting no
+     * longer than the time manager allows.
+     *
+     * @return the best move, or <code>null</code> if the time ran out
+     */
+    private Square searchParallel(GameState state, int depth) {
+        iterationLimit = depth;
+        serial = false;
+        stats = parallelStats;
+        RootTask root = new RootTask(state);
+        if (time.isUnlimited())
+            return pool.invoke(root);
+
+        pool.execute(root);
+        try {
+            return root.get(time.getRemainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException te) {
+            time.abort();
+        }
+        catch (InterruptedException ie) {
+            time.abort();
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ee) {
+            throw new IllegalStateException("The parallel search failed!", ee.getCause());
+        }
+        /* the aborted tasks return at once; none may outlive this search */
+        root.quietlyJoin();
+        return null;
+    }
+
+    /**
+     * Returns an iterator over the successors of <code>state</code>, best
+     * squares first, which only creates them as they are needed.
+     */
+    private Iterator<GameState> successors(GameState state) {
+        stats.totalSuccessors.addAndGet(Long.bitCount(state.legalMoveMask()));
+        stats.totalParents.incrementAndGet();
+        return state.successorIterator(BY_RANK, false);
+    }
+
+    /**
+     * Searches <code>state</code> with the max or min recursion, depending on
+     * whose turn it is (a pass does not change sides).
+     */
+    private int value(GameState state, int a, int b, int depth, Split split) {
+        stats.exploredSuccessors.incrementAndGet();
+        if (state.getCurrentPlayer() == maxPlayer)
+            return maxValue(state, a, b, depth, split);
+        else
+            return minValue(state, a, b, depth, split);
+    }
+
+    /**
+     * It maximizes the value of the evaluation function.
+     *
+     * @param state the state to be evaluated
+     * @param a value of the best alternative for max
+     * @param b value of the best alternative for min
+     * @param depth current depth of the state
+     * @param split the closest split node above this one, or null
+     * @return the maximum value of the evaluation function, or
+     *         <code>b</code> if it is at least <code>b</code>
+     */
+    private int maxValue(GameState state, int a, int b, int depth, Split split) {
+        if (time.isAborted() || (split != null && split.isCancelled()))
+            return b;
+        if (depth >= iterationLimit || state.getStatus() != GameState.GameStatus.PLAYING)
+            return staticEvaluator(state);
+
+        Iterator<GameState> successors = successors(state);
+        depth++;
+        // The eldest brother is always searched first, and alone
+        int v = value(successors.next(), a, b, depth, split);
+        if (v >= b)
+            return b;
+        a = Math.max(v, a);
+
+        if (serial || iterationLimit - depth < MIN_SPLIT_DEPTH || !successors.hasNext()) {
+            while (successors.hasNext()) {
+                v = Math.max(v, value(successors.next(), a, b, depth, split));
+                if (v >= b)
+                    return b;
+                a = Math.max(v, a);
+            }
+            return v;
+        }
+
+        Split s = new Split(split, a, b, true);
+        ArrayList<ChildTask> tasks = forkYoungerBrothers(successors, s, depth);
+        for (ChildTask t : tasks)
+            v = Math.max(v, t.join());
+        return s.cutoff ? b : v;
+    }
+
+    /**
+     * It minimizes the value of the evaluation function.
+     *
+     * @param state the state to be evaluated
+     * @param a value of the best alternative for max
+     * @param b value of the best alternative for min
+     * @param depth current depth of the state
+     * @param split the closest split node above this one, or null
+     * @return the minimum value of the evaluation function, or
+     *         <code>a</code> if it is at most <code>a</code>
+     */
+    private int minValue(GameState state, int a, int b, int depth, Split split) {
+        if (time.isAborted() || (split != null && split.isCancelled()))
+            return a;
+        /* it is the opponent's turn, so its value is negated */
+        if (depth >= iterationLimit || state.getStatus() != GameState.GameStatus.PLAYING)
+            return -staticEvaluator(state);
+
+        Iterator<GameState> successors = successors(state);
+        depth++;
+        int v = value(successors.next(), a, b, depth, split);
+        if (v <= a)
+            return a;
+        b = Math.min(v, b);
+
+        if (serial || iterationLimit - depth < MIN_SPLIT_DEPTH || !successors.hasNext()) {
+            while (successors.hasNext()) {
+                v = Math.min(v, value(successors.next(), a, b, depth, split));
+                if (v <= a)
+                    return a;
+                b = Math.min(v, b);
+            }
+            return v;
+        }
+
+        Split s = new Split(split, a, b, false);
+        ArrayList<ChildTask> tasks = forkYoungerBrothers(successors, s, depth);
+        for (ChildTask t : tasks)
+            v = Math.min(v, t.join());
+        return s.cutoff ? a : v;
+    }
+
+    /**
+     * Forks a task for every remaining successor, until one of the tasks
+     * already forked cuts the split node off.
+     */
+    private ArrayList<ChildTask> forkYoungerBrothers(Iterator<GameState> successors, Split split,
+            int depth) {
+        ArrayList<ChildTask> tasks = new ArrayList<ChildTask>();
+        while (successors.hasNext() && !split.isCancelled()) {
+            ChildTask t = new ChildTask(successors.next(), split, depth);
+            t.fork();
+            tasks.add(t);
+        }
+        return tasks;
+    }
+
+    /**
+     * Compute the value of the simple static evaluation function
+     *
+     * @state the state to be evaluated
+     * @return the value of the state from the point of view of the player to
+     *         move: by default the disc difference
+     */
+    @Override
+    public int staticEvaluator(GameState state) {
+        stats.staticEvaluations.incrementAndGet();
+        return evaluate(state);
+    }
+
+    /**
+     * Returns how many times faster the parallel search was than the serial
+     * one over the iterations compared, or zero if the speedup is not being
+     * measured.
+     */
+    public double getSpeedup() {
+        return (parallelTime == 0 ? 0 : (double) serialTime / (double) parallelTime);
+    }
+
+    /**
+     * Returns the fraction of extra nodes the parallel search generated
+     * compared with the serial one (<i>e.g.</i> 0.25 for 25% more nodes), or
+     * zero if the speedup is not being measured.
+     */
+    public double getSearchOverhead() {
+        long serialNodes = serialStats.exploredSuccessors.get();
+        if (serialNodes == 0)
+            return 0;
+        return (double) comparedNodes / (double) serialNodes - 1.0;
+    }
+
+    /**
+     * Get the number of nodes generated by the parallel search
+     *
+     * @return the number of nodes generated.
+     */
+    @Override
+    public int getNodesGenerated() {
+        return (int) parallelStats.exploredSuccessors.get();
+    }
+
+    /**
+     * Get the number of static evaluations of the parallel search
+     *
+     * @return the number of static evaluations performed.
+     */
+    @Override
+    public int getStaticEvaluations() {
+        return (int) parallelStats.staticEvaluations.get();
+    }
+
+    /**
+     * Get the average branching factor of the nodes that
+     * were expanded during the parallel search.
+     *
+     * @return the average branching factor.
+     */
+    @Override
+    public double getAveBranchingFactor() {
+        return (double) parallelStats.totalSuccessors.get()
+                / (double) parallelStats.totalParents.get();
+    }
+
+    /**
+     * Get the effective branching factor of the nodes that
+     * were expanded during the parallel search.
+     *
+     * @return the effective branching factor.
+     */
+    @Override
+    public double getEffectiveBranchingFactor() {
+        return (double) parallelStats.exploredSuccessors.get()
+                / (double) parallelStats.totalParents.get();
+    }
+
+    /**
+     * Search statistics, shared by all threads of a search.
+     */
+    private static class Statistics {
+        final AtomicLong staticEvaluations = new AtomicLong();
+        final AtomicLong totalSuccessors = new AtomicLong();
+        final AtomicLong exploredSuccessors = new AtomicLong();
+        final AtomicLong totalParents = new AtomicLong();
+    }
+
+    /**
+     * A node whose younger brothers are being searched in parallel. Once one
+     * of them causes a cutoff, the node is cancelled, and with it every search
+     * below it.
+     */
+    private static class Split {
+        final Split parent;
+        final int a;
+        final int b;
+        final boolean max;
+        volatile boolean cutoff = false;
+
+        Split(Split parent, int a, int b, boolean max) {
+            this.parent = parent;
+            this.a = a;
+            this.b = b;
+            this.max = max;
+        }
+
+        boolean isCancelled() {
+            for (Split s = this; s != null; s = s.parent)
+                if (s.cutoff)
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Searches one younger brother of a split node.
+     */
+    private class ChildTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final GameState state;
+        private final Split split;
+        private final int depth;
+
+        ChildTask(GameState state, Split split, int depth) {
+            this.state = state;
+            this.split = split;
+            this.depth = depth;
+        }
+
+        protected Integer compute() {
+            int v = value(state, split.a, split.b, depth, split);
+            if (split.max ? v >= split.b : v <= split.a)
+                split.cutoff = true;
+            return v;
+        }
+    }
+
+    /**
+     * Searches the root: the eldest successor first, then the others in
+     * parallel with the window it established. Of equally good moves the
+     * first in move order is chosen.
+     */
+    private class RootTask extends RecursiveTask<Square> {
+        private static final long serialVersionUID = 1L;
+
+        private final GameState state;
+
+        RootTask(GameState state) {
+            this.state = state;
+        }
+
+        protected Square compute() {
+            if (state.getStatus() != GameState.GameStatus.PLAYING)
+                return null;
+            Iterator<GameState> successors = successors(state);
+            /* moves to symmetric positions have the same value */
+            long distinct = state.distinctMoveMask();
+            GameState optimalState = null;
+            int best = Integer.MIN_VALUE;
+            Split s = null;
+            ArrayList<ChildTask> tasks = new ArrayList<ChildTask>();
+            while (successors.hasNext()) {
+                GameState successor = successors.next();
+                if ((distinct & (1L << successor.getPreviousMove().getIndex())) == 0)
+                    continue;
+                if (optimalState == null) {
+                    best = value(successor, Integer.MIN_VALUE, Integer.MAX_VALUE, 1, null);
+                    optimalState = successor;
+                }
+                else if (serial) {
+                    int cur = value(successor, best, Integer.MAX_VALUE, 1, null);
+                    if (cur > best) {
+                        best = cur;
+                        optimalState = successor;
+                    }
+                }
+                else {
+                    /* the root is never cut off, so this split is never cancelled */
+                    if (s == null)
+                        s = new Split(null, best, Integer.MAX_VALUE, true);
+                    ChildTask t = new ChildTask(successor, s, 1);
+                    t.fork();
+                    tasks.add(t);
+                }
+            }
+
+            for (ChildTask t : tasks) {
+                int cur = t.join();
+                if (cur > best) {
+                    best = cur;
+                    optimalState = t.state;
+                }
+            }
+            return (optimalState == null ? null : optimalState.getPreviousMove());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// package edu.drexel.cs.ai.othello;
+
+/**
+ * Zobrist keys for hashing board positions into 64-bit values. The key of a
+ * position is the exclusive or of one random value per occupied square and
+ * owner, plus {@link #PLAYER2_TO_MOVE} when it is player 2's turn, so it can
+ * be updated incrementally as discs are placed and flipped.
+ * <p>
+ * The keys are generated from a fixed seed so that hashes are stable across
+ * runs and may be persisted.
+ * </p>
+ */
+final class Zobrist {
+    static final long PLAYER1[] = new long[64];
+    static final long PLAYER2[] = new long[64];
+    /**
+     * <code>FLIP[i] == PLAYER1[i] ^ PLAYER2[i]</code>, the change in the key
+     * when the disc on square <code>i</code> changes owner.
+     */
+    static final long FLIP[] = new long[64];
+    static final long PLAYER2_TO_MOVE;
+
+    static {
+        long seed = 0x4f7468656c6c6fL;
+        for (int i = 0; i < 64; i++) {
+            PLAYER1[i] = splitMix(seed += 0x9e3779b97f4a7c15L);
+            PLAYER2[i] = splitMix(seed += 0x9e3779b97f4a7c15L);
+            FLIP[i] = PLAYER1[i] ^ PLAYER2[i];
+        }
+        PLAYER2_TO_MOVE = splitMix(seed + 0x9e3779b97f4a7c15L);
+    }
+
+    private Zobrist() {
+    }
+
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the key of a position from scratch.
+     */
+    static long hash(long player1Discs, long player2Discs, boolean player2ToMove) {
+        long h = (player2ToMove ? PLAYER2_TO_MOVE : 0);
+        for (long m = player1Discs; m != 0; m &= m - 1)
+            h ^= PLAYER1[Long.numberOfTrailingZeros(m)];
+        for (long m = player2Discs; m != 0; m &= m - 1)
+            h ^= PLAYER2[Long.numberOfTrailingZeros(m)];
+        return h;
+    }
+
+    /**
+     * Returns the change in the key when the discs in <code>flipped</code>
+     * change owner.
+     */
+    static long flip(long flipped) {
+        long h = 0;
+        for (; flipped != 0; flipped &= flipped - 1)
+            h ^= FLIP[Long.numberOfTrailingZeros(flipped)];
+        return h;
+    }
+}